@@ -0,0 +1,13 @@
+/**
+ * What LiftRideConsumer.storeBatch did with a batch.
+ */
+public enum BatchOutcome {
+    // Written to DynamoDB and applied to Redis (or nothing left to write)
+    PERSISTED,
+    // Kept in the write-behind spool for the replayer
+    SPOOLED,
+    // Republished to the delayed retry queues
+    RETRIED,
+    // Neither persisted nor kept anywhere: the spool append failed
+    LOST
+}
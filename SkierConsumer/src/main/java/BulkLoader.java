@@ -0,0 +1,388 @@
+import model.LiftRide;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline bulk load of ride files into DynamoDB and the Redis aggregates, bypassing the servlet and the ride queue.
+ * With ride.fanout.enabled the persisted batches are still published to the GET consumers' read models.
+ *
+ * Usage: BulkLoader file... where files ending in .csv hold skierID,resortID,seasonID,dayID,time,liftID[,rideID]
+ * (a header line is skipped) and all others hold one LiftRide JSON object per line, as published to skiersQueue.
+ *
+ * Each file is memory-mapped in windows of up to WINDOW_BYTES that end on a line break. A window is split into
+ * line-aligned chunks of about CHUNK_BYTES that are parsed in parallel on a ForkJoinPool, and the parsed batches
+ * are handed to a bounded pool of writer threads running the consumer's dedup and storeBatch. A bulk load therefore
+ * goes through the same dedup, rate-controlled writes, aggregates and spool as live traffic.
+ *
+ * Rows are counted by what happened to them: persisted, dropped as duplicates or spooled for the replayer. A batch
+ * the spool could not take is lost, and a spooled one the replayer parked is not persisted either: both make the
+ * load fail with a non-zero exit.
+ */
+public class BulkLoader {
+    private static final int BATCH_SIZE = 25;
+    private static final long WINDOW_BYTES = 1L << 30;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+    private static final byte[][] JSON_FIELDS = {
+            bytes("skierID"), bytes("resortID"), bytes("seasonID"), bytes("dayID"), bytes("time"), bytes("liftID"), bytes("rideID")
+    };
+    private static final int RIDE_ID_FIELD = 6;
+
+    private final LiftRideConsumer consumer;
+    private final ForkJoinPool parsers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final ThreadPoolExecutor writers;
+
+    private final LongAdder parsedRows = new LongAdder();
+    private final LongAdder persistedRows = new LongAdder();
+    private final LongAdder duplicateRows = new LongAdder();
+    private final LongAdder spooledRows = new LongAdder();
+    private final LongAdder lostRows = new LongAdder();
+    private final LongAdder rejectedRows = new LongAdder();
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private long totalBytes;
+
+    public BulkLoader(LiftRideConsumer consumer, int writerThreads) {
+        this.consumer = consumer;
+        // Bounded queue + caller-runs: parsers slow down to the rate the store accepts instead of buffering the file
+        this.writers = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writerThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: BulkLoader <rides.csv|rides.ndjson>...");
+            System.exit(1);
+        }
+        LiftRideConsumer consumer = new LiftRideConsumer();
+        if (Config.isRideFanoutEnabled()) {
+            consumer.initRideFanout(LiftRideConsumer.connect());
+        }
+        consumer.initPersistence();
+        MetricsReporter.start(Config.getMetricsReportIntervalSeconds());
+
+        BulkLoader loader = new BulkLoader(consumer, Config.getBulkWriterThreads());
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Path.of(arg));
+        }
+        try {
+            loader.load(files);
+        } catch (Exception e) {
+            System.err.println("[bulk] failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public void load(List<Path> files) throws Exception {
+        for (Path file : files) {
+            totalBytes += file.toFile().length();
+        }
+
+        long start = System.nanoTime();
+        long parkedBefore = consumer.getSpoolParkedCount();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> printProgress(start), PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            for (Path file : files) {
+                loadFile(file);
+            }
+        } finally {
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        if (lostRows.sum() > 0) {
+            printProgress(start);
+            throw new IllegalStateException(lostRows.sum() + " rows could not be spooled and were lost");
+        }
+
+        // Throttled batches were spooled; the load is only complete once the replayer has drained them
+        while (consumer.getSpoolDepth() > 0) {
+            Thread.sleep(1000);
+        }
+        progress.shutdownNow();
+        printProgress(start);
+        long parked = consumer.getSpoolParkedCount() - parkedBefore;
+        if (parked > 0) {
+            throw new IllegalStateException(parked + " spooled batches kept failing and were parked instead of persisted");
+        }
+        System.out.println("[bulk] done");
+    }
+
+    private void loadFile(Path file) throws IOException {
+        boolean csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long windowBytes = Math.min(WINDOW_BYTES, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowBytes);
+
+                // Cut the window after its last line break so no line spans two windows
+                int limit = (int) windowBytes;
+                if (position + windowBytes < size) {
+                    while (limit > 0 && window.get(limit - 1) != '\n') {
+                        limit--;
+                    }
+                    if (limit == 0) {
+                        throw new IOException("Line longer than " + WINDOW_BYTES + " bytes in " + file);
+                    }
+                }
+
+                parsers.invoke(new ParseTask(window, 0, limit, csv));
+                position += limit;
+            }
+        }
+    }
+
+    private void printProgress(long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long persisted = persistedRows.sum();
+        System.out.printf("[bulk] parsed=%d persisted=%d duplicates=%d spooled=%d lost=%d rejected=%d bytes=%d/%d (%.1f%%) rate=%.0f rows/s%n",
+                parsedRows.sum(), persisted, duplicateRows.sum(), spooledRows.sum(), lostRows.sum(), rejectedRows.sum(), loadedBytes.get(), totalBytes,
+                totalBytes == 0 ? 100.0 : 100.0 * loadedBytes.get() / totalBytes, seconds > 0 ? persisted / seconds : 0);
+    }
+
+    private void submit(List<LiftRide> batch) {
+        if (lostRows.sum() > 0) {
+            throw new IllegalStateException("Spool append failed, aborting the bulk load");
+        }
+        writers.execute(() -> {
+            List<LiftRide> fresh = consumer.removeDuplicates(batch);
+            duplicateRows.add(batch.size() - fresh.size());
+            BatchOutcome outcome = consumer.storeBatch(fresh);
+            if (outcome == BatchOutcome.PERSISTED) {
+                persistedRows.add(fresh.size());
+            } else if (outcome == BatchOutcome.LOST) {
+                lostRows.add(fresh.size());
+                System.err.println("[bulk] lost a batch of " + fresh.size() + " rows");
+            } else {
+                spooledRows.add(fresh.size()); // without a broker, storeBatch never republishes
+            }
+        });
+    }
+
+    // Parses [start, end) of a window, splitting it at line breaks until chunks are at most CHUNK_BYTES
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final boolean csv;
+
+        ParseTask(MappedByteBuffer buffer, int start, int end, boolean csv) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.csv = csv;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > CHUNK_BYTES) {
+                int mid = start + (end - start) / 2;
+                while (mid < end && buffer.get(mid - 1) != '\n') {
+                    mid++;
+                }
+                invokeAll(new ParseTask(buffer, start, mid, csv), new ParseTask(buffer, mid, end, csv));
+                return;
+            }
+
+            List<LiftRide> batch = new ArrayList<>(BATCH_SIZE);
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                LiftRide liftRide = csv ? parseCsv(buffer, lineStart, lineEnd) : parseJson(buffer, lineStart, lineEnd);
+                if (liftRide != null) {
+                    parsedRows.increment();
+                    batch.add(liftRide);
+                    if (batch.size() == BATCH_SIZE) {
+                        submit(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            if (!batch.isEmpty()) {
+                submit(batch);
+            }
+            loadedBytes.addAndGet(end - start);
+        }
+    }
+
+    // skierID,resortID,seasonID,dayID,time,liftID[,rideID]; blank and header lines yield null without counting as rejected
+    private LiftRide parseCsv(MappedByteBuffer buffer, int start, int end) {
+        int first = skipWhitespace(buffer, start, end);
+        if (first == end || Character.isLetter(buffer.get(first))) {
+            return null;
+        }
+        long[] values = new long[7];
+        int fields = 0;
+        int position = first;
+        while (position <= end && fields < values.length) {
+            long[] parsed = parseNumber(buffer, skipWhitespace(buffer, position, end), end);
+            if (parsed == null) {
+                rejectedRows.increment();
+                return null;
+            }
+            values[fields++] = parsed[0];
+            position = skipWhitespace(buffer, (int) parsed[1], end);
+            if (position < end && buffer.get(position) != ',') {
+                break;
+            }
+            position++;
+        }
+        if (fields < 6) {
+            rejectedRows.increment();
+            return null;
+        }
+        return toLiftRide(values, fields == 7);
+    }
+
+    // Flat JSON object with numeric fields, which may be quoted like Gson accepts them; unknown keys are ignored,
+    // missing required ones reject the line
+    private LiftRide parseJson(MappedByteBuffer buffer, int start, int end) {
+        if (skipWhitespace(buffer, start, end) == end) {
+            return null;
+        }
+        long[] values = new long[JSON_FIELDS.length];
+        boolean[] present = new boolean[JSON_FIELDS.length];
+        int position = start;
+        while (true) {
+            int keyStart = indexOf(buffer, (byte) '"', position, end) + 1;
+            if (keyStart == 0) {
+                break;
+            }
+            int keyEnd = indexOf(buffer, (byte) '"', keyStart, end);
+            int colon = keyEnd < 0 ? -1 : indexOf(buffer, (byte) ':', keyEnd, end);
+            if (colon < 0) {
+                rejectedRows.increment();
+                return null;
+            }
+            position = skipWhitespace(buffer, colon + 1, end);
+            int field = fieldIndex(buffer, keyStart, keyEnd);
+            if (position < end && buffer.get(position) == '"') {
+                int close = indexOf(buffer, (byte) '"', position + 1, end);
+                if (close < 0) {
+                    rejectedRows.increment();
+                    return null;
+                }
+                if (field >= 0) {
+                    // A known field sent as a string must hold exactly one number
+                    long[] parsed = parseNumber(buffer, position + 1, close);
+                    if (parsed == null || parsed[1] != close) {
+                        rejectedRows.increment();
+                        return null;
+                    }
+                    values[field] = parsed[0];
+                    present[field] = true;
+                }
+                position = close + 1;
+                continue;
+            }
+            long[] parsed = parseNumber(buffer, position, end);
+            if (parsed != null) {
+                if (field >= 0) {
+                    values[field] = parsed[0];
+                    present[field] = true;
+                }
+                position = (int) parsed[1];
+            }
+        }
+        for (int field = 0; field < RIDE_ID_FIELD; field++) {
+            if (!present[field]) {
+                rejectedRows.increment();
+                return null;
+            }
+        }
+        return toLiftRide(values, present[RIDE_ID_FIELD]);
+    }
+
+    private static LiftRide toLiftRide(long[] values, boolean hasRideID) {
+        LiftRide liftRide = new LiftRide((int) values[0], (int) values[1], (int) values[2], (int) values[3],
+                (int) values[4], (int) values[5]);
+        if (hasRideID) {
+            liftRide.setRideID(values[RIDE_ID_FIELD]);
+        }
+        return liftRide;
+    }
+
+    // Returns {value, position after the number}, or null when no digits start at position
+    private static long[] parseNumber(MappedByteBuffer buffer, int position, int end) {
+        boolean negative = position < end && buffer.get(position) == '-';
+        int digit = negative ? position + 1 : position;
+        long value = 0;
+        int first = digit;
+        while (digit < end) {
+            byte b = buffer.get(digit);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digit++;
+        }
+        return digit == first ? null : new long[] {negative ? -value : value, digit};
+    }
+
+    private static int fieldIndex(MappedByteBuffer buffer, int keyStart, int keyEnd) {
+        for (int field = 0; field < JSON_FIELDS.length; field++) {
+            byte[] name = JSON_FIELDS[field];
+            if (name.length != keyEnd - keyStart) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length && buffer.get(keyStart + i) == name[i]) {
+                i++;
+            }
+            if (i == name.length) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte target, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(MappedByteBuffer buffer, int position, int end) {
+        while (position < end && buffer.get(position) <= ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private static byte[] bytes(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+}
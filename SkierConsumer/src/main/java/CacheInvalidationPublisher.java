@@ -0,0 +1,63 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import model.LiftRide;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tells the GET consumers' near caches which responses a persisted batch made stale.
+ *
+ * One message per batch is published to the fanout exchange every GET consumer instance listens on; it holds
+ * the distinct invalidation tags of the batch, which are the response cache hashes it touches (see RedisKeys):
+ * API2 per skier-resort-season, API1 per resort-season and API3 per skier.
+ */
+public class CacheInvalidationPublisher {
+    public static final String INVALIDATION_EXCHANGE = "cacheInvalidationExchange"; // NearCache in SkierGetConsumer
+    private static final int CHANNEL_POOL_SIZE = 4;
+
+    private final RMQChannelPool channelPool;
+    private final Gson gson = new Gson();
+
+    public CacheInvalidationPublisher(Connection connection) throws Exception {
+        this.channelPool = new RMQChannelPool(CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
+        Channel channel = channelPool.borrowObject();
+        try {
+            channel.exchangeDeclare(INVALIDATION_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+
+    // Cache hashes a batch makes stale (the invalidation tags) with their stale fields, shared with ResponseCacheInvalidator
+    public static Map<String, Set<String>> affectedTags(List<LiftRide> batch) {
+        Map<String, Set<String>> tags = new LinkedHashMap<>();
+        for (LiftRide liftRide : batch) {
+            String dayID = String.valueOf(liftRide.getDayID());
+            tags.computeIfAbsent(RedisKeys.dayVerticalCache(liftRide.getSkierID(), liftRide.getResortID(), liftRide.getSeasonID()),
+                    tag -> new LinkedHashSet<>()).add(dayID);
+            tags.computeIfAbsent(RedisKeys.uniqueSkiersCache(liftRide.getResortID(), liftRide.getSeasonID()),
+                    tag -> new LinkedHashSet<>()).add(dayID);
+            Set<String> resortVerticalFields = tags.computeIfAbsent(RedisKeys.resortVerticalCache(liftRide.getSkierID()),
+                    tag -> new LinkedHashSet<>());
+            resortVerticalFields.add(RedisKeys.resortSeasonField(liftRide.getResortID(), liftRide.getSeasonID()));
+            resortVerticalFields.add(RedisKeys.resortCompleteField(liftRide.getResortID()));
+        }
+        return tags;
+    }
+
+    public void publish(Set<String> tags) throws Exception {
+        Channel channel = channelPool.borrowObject();
+        try {
+            channel.basicPublish(INVALIDATION_EXCHANGE, "", null, gson.toJson(tags).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+}
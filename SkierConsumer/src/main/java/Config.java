@@ -39,4 +39,129 @@ public class Config {
     public static String getRedisPassword() {
         return properties.getProperty("redis.password");
     }
-}
\ No newline at end of file
+
+    public static boolean isRedisAggregatesEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("aggregates.redis.enabled", "false"));
+    }
+
+    public static StorageMode getStorageMode() {
+        return StorageMode.valueOf(properties.getProperty("dynamodb.storage.mode", StorageMode.ITEM_PER_RIDE.name()));
+    }
+
+    public static String getSpoolDir() {
+        return properties.getProperty("spool.dir", "spool");
+    }
+
+    public static int getSpoolSegmentBytes() {
+        return Integer.parseInt(properties.getProperty("spool.segment.bytes", String.valueOf(16 * 1024 * 1024)));
+    }
+
+    // Non-throttle failures of a spooled batch before it is parked
+    public static int getSpoolReplayMaxAttempts() {
+        return Integer.parseInt(properties.getProperty("spool.replay.max.attempts", "10"));
+    }
+
+    public static int getMetricsReportIntervalSeconds() {
+        return Integer.parseInt(properties.getProperty("metrics.report.interval.seconds", "10"));
+    }
+
+    public static double getWriteRateInitial() {
+        return Double.parseDouble(properties.getProperty("dynamodb.write.rate.initial", "500"));
+    }
+
+    public static double getWriteRateMin() {
+        return Double.parseDouble(properties.getProperty("dynamodb.write.rate.min", "25"));
+    }
+
+    public static double getWriteRateMax() {
+        return Double.parseDouble(properties.getProperty("dynamodb.write.rate.max", "20000"));
+    }
+
+    public static double getWriteRateIncrease() {
+        return Double.parseDouble(properties.getProperty("dynamodb.write.rate.increase", "50"));
+    }
+
+    public static double getWriteRateDecrease() {
+        return Double.parseDouble(properties.getProperty("dynamodb.write.rate.decrease", "0.5"));
+    }
+
+    public static long getWriteRateAdjustIntervalMs() {
+        return Long.parseLong(properties.getProperty("dynamodb.write.rate.adjust.interval.ms", "1000"));
+    }
+
+    public static boolean isPartitioningEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("partitioning.enabled", "false"));
+    }
+
+    public static int getPartitionCount() {
+        return Integer.parseInt(properties.getProperty("partitioning.partitions", "16"));
+    }
+
+    public static long getPartitionLingerMs() {
+        return Long.parseLong(properties.getProperty("partitioning.linger.ms", "1000"));
+    }
+
+    public static boolean isInProcessAggregationEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("aggregates.inprocess.enabled", "false"));
+    }
+
+    public static int getMaxSkierID() {
+        return Integer.parseInt(properties.getProperty("aggregates.max.skier.id", "100000"));
+    }
+
+    public static long getAggregateFlushIntervalMs() {
+        return Long.parseLong(properties.getProperty("aggregates.flush.interval.ms", "1000"));
+    }
+
+    public static long getDedupExpectedRidesPerDay() {
+        return Long.parseLong(properties.getProperty("dedup.expected.rides.per.day", "2000000"));
+    }
+
+    public static double getDedupFalsePositiveRate() {
+        return Double.parseDouble(properties.getProperty("dedup.false.positive.rate", "0.01"));
+    }
+
+    // Delay tiers of the retry queues, e.g. "1000,5000,30000"; a ride failing after the last tier is parked
+    public static long[] getRetryDelaysMs() {
+        String[] delays = properties.getProperty("retry.delays.ms", "1000,5000,30000").split(",");
+        long[] delaysMs = new long[delays.length];
+        for (int i = 0; i < delays.length; i++) {
+            delaysMs[i] = Long.parseLong(delays[i].trim());
+        }
+        return delaysMs;
+    }
+
+    public static int getPrefetchMin() {
+        return Integer.parseInt(properties.getProperty("prefetch.min", "10"));
+    }
+
+    public static int getPrefetchMax() {
+        return Integer.parseInt(properties.getProperty("prefetch.max", "1000"));
+    }
+
+    public static double getPrefetchHeadroom() {
+        return Double.parseDouble(properties.getProperty("prefetch.headroom", "2.0"));
+    }
+
+    public static long getPrefetchAdjustIntervalMs() {
+        return Long.parseLong(properties.getProperty("prefetch.adjust.interval.ms", "2000"));
+    }
+
+    public static int getBulkWriterThreads() {
+        return Integer.parseInt(properties.getProperty("bulk.writer.threads", "64"));
+    }
+
+    public static boolean isCacheInvalidationEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("cache.invalidation.enabled", "true"));
+    }
+
+    // TTL of the GET consumer's Redis response cache; the invalidation version counters live at least as long
+    public static int getCacheTtlSeconds() {
+        return Integer.parseInt(properties.getProperty("cache.ttl.seconds", "86400"));
+    }
+
+    // Publish persisted batches to the GET consumers' read models (see RideFanoutPublisher)
+    public static boolean isRideFanoutEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("ride.fanout.enabled", "false"));
+    }
+}
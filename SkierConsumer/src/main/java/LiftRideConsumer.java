@@ -4,15 +4,18 @@ import model.LiftRide;
 import redis.clients.jedis.JedisPool;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class LiftRideConsumer {
@@ -20,18 +23,24 @@ public class LiftRideConsumer {
     private static final int RMQ_CHANNEL_POOL_SIZE = 100;
     private static final int NUM_CONSUMER_THREADS = 800;
     private static final int BATCH_SIZE = 25;  // Number of messages per Redis batch
-    private static final int MAX_RETRIES = 5;  // Retry attempts for Redis operations
-
-    private static final String TABLE_NAME = "SkierTable";
-    private static final String PartitionKey = "PK";
-    private static final String SortKey = "SK";
-    private static final String GSIPartitionKey = "GSI_PK";
-    private static final String GSISortKey = "GSI_SK";
+    private static final int PREFETCH_COUNT = 100; // initial prefetch; adapted per channel by prefetchController
+    private static final int DEDUP_FILTER_GENERATIONS = 2;
 
     private Connection connection;
     private RMQChannelPool channelPool;
     private JedisPool jedisPool; // Redis connection pool
     private DynamoDbClient dynamoDbClient;
+    private LiftRideStore liftRideStore;
+    private RedisAggregateWriter aggregateWriter; // null when Redis aggregates are disabled
+    private SkierDayAggregateStore aggregateStore; // null unless verticals are aggregated in process
+    private RideDeduplicator deduplicator; // null when Redis is not available as the exact store
+    private WriteBehindSpool spool; // durable buffer for batches DynamoDB could not take
+    private WriteRateController writeRateController; // shared AIMD limit for all DynamoDB writers
+    private RetryPublisher retryPublisher; // delayed retry tiers for batches that failed for other reasons
+    private PrefetchController prefetchController; // per-channel basicQos from observed service time
+    private CacheInvalidationPublisher invalidationPublisher; // near-cache invalidations for the GET consumers
+    private RideFanoutPublisher rideFanoutPublisher; // feed of the GET consumers' read models, null when disabled
+    private ResponseCacheInvalidator responseCacheInvalidator; // deletes stale GET responses from Redis, null when disabled
 
 
     public static void main(String[] args) {
@@ -43,25 +52,49 @@ public class LiftRideConsumer {
         ExecutorService executor = Executors.newFixedThreadPool(NUM_CONSUMER_THREADS);
 
         try {
-            // Set up RabbitMQ connection
-            ConnectionFactory factory = new ConnectionFactory();
-            factory.setHost(Config.getRMQHost()); // Adjust host as necessary
-            factory.setUsername(Config.getRMQUsername());
-            factory.setPassword(Config.getRMQPassword());
-            factory.setPort(Config.getRMQPort());
-            connection = factory.newConnection();
+            connection = connect();
 
             // Initialize RMQChannelPool with default pool settings
             channelPool = new RMQChannelPool(RMQ_CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
 
-            // Initialize Redis connection pool using Singleton
-//            jedisPool = RedisConnectionManager.getJedisPool();
-
-            // Initialize DynamoDB client
-            Region region = Region.US_WEST_2; // Change to the region specified in your AWS Learner Lab
-            dynamoDbClient = DynamoDbClient.builder()
-                    .region(region)
-                    .build();
+            if (Config.isRideFanoutEnabled()) {
+                initRideFanout(connection);
+            }
+            initPersistence();
+
+            // Failed rides wait in TTL queues and are dead-lettered back to where the consumers read from
+            if (Config.isPartitioningEnabled()) {
+                retryPublisher = new RetryPublisher(connection, Config.getRetryDelaysMs(), PartitionedConsumer.EXCHANGE_NAME,
+                        PartitionedConsumer.EXCHANGE_NAME, null);
+            } else {
+                retryPublisher = new RetryPublisher(connection, Config.getRetryDelaysMs(), QUEUE_NAME, "", QUEUE_NAME);
+            }
+            for (int tier = 0; tier < retryPublisher.getTierCount(); tier++) {
+                int t = tier;
+                MetricsReporter.register("retry." + retryPublisher.getTierDelayMs(t) + "ms.depth", () -> retryPublisher.getQueueDepth(t));
+            }
+            MetricsReporter.register("retry.parked", retryPublisher::getParkedCount);
+
+            invalidationPublisher = new CacheInvalidationPublisher(connection);
+
+            prefetchController = new PrefetchController(PREFETCH_COUNT, Config.getPrefetchMin(), Config.getPrefetchMax(),
+                    Config.getPrefetchHeadroom());
+            prefetchController.start(Config.getPrefetchAdjustIntervalMs());
+            MetricsReporter.register("prefetch.min", prefetchController::getMinApplied);
+            MetricsReporter.register("prefetch.avg", prefetchController::getAverageApplied);
+            MetricsReporter.register("prefetch.max", prefetchController::getMaxApplied);
+            MetricsReporter.register("prefetch.rttMicros", prefetchController::getAverageRttMicros);
+            MetricsReporter.register("prefetch.arrivalRate", prefetchController::getArrivalRate);
+
+            MetricsReporter.start(Config.getMetricsReportIntervalSeconds());
+
+            // Skier-partitioned topology: one single-writer worker per owned partition queue
+            if (Config.isPartitioningEnabled()) {
+                new PartitionedConsumer(connection, RedisConnectionManager.getJedisPool(), Config.getPartitionCount(),
+                        BATCH_SIZE, Config.getPartitionLingerMs(), prefetchController, this::processBatch).start();
+                executor.shutdown();
+                return;
+            }
 
             // Start consumer threads
             for (int i = 0; i < NUM_CONSUMER_THREADS; i++) {
@@ -74,18 +107,84 @@ public class LiftRideConsumer {
         }
     }
 
+    // Set up RabbitMQ connection
+    static Connection connect() throws Exception {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(Config.getRMQHost()); // Adjust host as necessary
+        factory.setUsername(Config.getRMQUsername());
+        factory.setPassword(Config.getRMQPassword());
+        factory.setPort(Config.getRMQPort());
+        return factory.newConnection();
+    }
+
+    // Publishes every persisted batch to the read models; called before initPersistence, so the batches the spool
+    // replays at startup reach them as well. The bulk loader calls it too: the read models treat a season as
+    // complete, so bulk-loaded rides must reach them like live ones.
+    void initRideFanout(Connection connection) throws Exception {
+        rideFanoutPublisher = new RideFanoutPublisher(connection);
+    }
+
+    // Sets up everything processBatch needs (Redis aggregates, dedup, DynamoDB, rate control, spool); no RabbitMQ
+    void initPersistence() throws IOException {
+        // Initialize Redis connection pool using Singleton
+        if (Config.isRedisAggregatesEnabled()) {
+            jedisPool = RedisConnectionManager.getJedisPool();
+            aggregateWriter = new RedisAggregateWriter(jedisPool, Config.getMaxSkierID());
+
+            deduplicator = new RideDeduplicator(new RotatingBloomFilter(Config.getDedupExpectedRidesPerDay(),
+                    Config.getDedupFalsePositiveRate(), DEDUP_FILTER_GENERATIONS, TimeUnit.DAYS.toMillis(1)), jedisPool);
+            MetricsReporter.register("dedup.dropped", deduplicator::getDuplicatesDropped);
+            MetricsReporter.register("dedup.exactChecks", deduplicator::getExactChecks);
+
+            // Verticals are summed off-heap per skier-day and flushed as deltas instead of one script call per ride
+            if (Config.isInProcessAggregationEnabled()) {
+                aggregateStore = new SkierDayAggregateStore(jedisPool, Config.getMaxSkierID(), aggregateWriter::markPersisted);
+                aggregateStore.startFlusher(Config.getAggregateFlushIntervalMs());
+                MetricsReporter.register("aggregates.activeDays", aggregateStore::getActiveDays);
+            }
+        }
+
+        if (Config.isCacheInvalidationEnabled()) {
+            responseCacheInvalidator = new ResponseCacheInvalidator(RedisConnectionManager.getJedisPool(), Config.getCacheTtlSeconds());
+        }
+
+        // Initialize DynamoDB client
+        Region region = Region.US_WEST_2; // Change to the region specified in your AWS Learner Lab
+        dynamoDbClient = DynamoDbClient.builder()
+                .region(region)
+                .build();
+        liftRideStore = new LiftRideStore(dynamoDbClient, Config.getStorageMode());
+        writeRateController = new WriteRateController(
+                Config.getWriteRateInitial(), Config.getWriteRateMin(), Config.getWriteRateMax(),
+                Config.getWriteRateIncrease(), Config.getWriteRateDecrease(), Config.getWriteRateAdjustIntervalMs());
+
+        // Recover spooled batches from a previous run and start draining them in the background
+        spool = new WriteBehindSpool(Config.getSpoolDir(), Config.getSpoolSegmentBytes());
+        new SpoolReplayer(spool, this::persistBatch, Config.getSpoolReplayMaxAttempts()).start();
+
+        MetricsReporter.register("spool.depth", spool::getDepth);
+        MetricsReporter.register("spool.parked", spool::getParkedCount);
+        MetricsReporter.register("dynamodb.write.rate", () -> (long) writeRateController.getRate());
+        MetricsReporter.register("dynamodb.write.throttles", writeRateController::getThrottleCount);
+    }
+
     private void consumeMessages() {
         List<LiftRide> batch = new ArrayList<>();
         try {
             // Borrow a channel from the pool for each consumption cycle
             Channel channel = channelPool.borrowObject();
-            channel.basicQos(100); // Prefetch 100 messages
+            PrefetchController.ChannelStats prefetch = prefetchController.register();
+            prefetch.apply(channel);
 
             // Set up the message callback
             channel.basicConsume(QUEUE_NAME, false, (consumerTag, delivery) -> {
+                long start = System.nanoTime();
+                prefetch.arrived();
                 String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
                 LiftRide liftRide = parseLiftRide(message);
                 if (liftRide != null) {
+                    liftRide.setRedelivered(delivery.getEnvelope().isRedeliver());
+                    liftRide.setRetryAttempt(RetryPublisher.attemptOf(delivery.getProperties()));
                     batch.add(liftRide);
 
                     // If the batch size is reached, process it
@@ -95,6 +194,8 @@ public class LiftRideConsumer {
                     }
                 }
                 channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+                prefetch.record(System.nanoTime() - start);
+                prefetch.apply(channel);
             }, consumerTag -> {});
 
         } catch (Exception e) {
@@ -108,78 +209,144 @@ public class LiftRideConsumer {
     }
 
     // ------------------------- DynamoDB persistence ---------------------------------
-    private void processBatch(List<LiftRide> batch) {
-        int retryCount = 0;
-        int backoffTime = 100; // Initial backoff time in milliseconds
+    BatchOutcome processBatch(List<LiftRide> batch) {
+        return storeBatch(removeDuplicates(batch));
+    }
 
-        while (retryCount <= MAX_RETRIES) {
-            try {
-                for (LiftRide liftRide : batch) {
-                    // APIS
-                    // PK:SKIER#{skierID}
-                    // SK:RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}
-                    // GET/skiers/{skierID}/vertical: Get the total vertical for the skier for specified seasons at the specified resort (Params: resortID, seasonID(optional))
-                    // GET/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers: get number of unique skiers at resort/season/day
-                    // GET/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}: get ski day vertical for a skier
-                    // No need for GSI
-
-                    // Primary Key (PK) and Sort Key (SK)
-                    String pk = "SKIER#" + liftRide.getSkierID();
-                    String sk = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID() + "#DAY#" + liftRide.getDayID() + "#LIFT#" + liftRide.getLiftID();
-
-                    // GSI Keys
-                    String gsiPk = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID() + "#DAY#" + liftRide.getDayID();
-//                    String gsiSk = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID();
-
-                    // Item Attributes
-                    Map<String, AttributeValue> attributes = Map.of(
-                            "time", AttributeValue.builder().s(String.valueOf(liftRide.getTime())).build(),
-                            "liftID", AttributeValue.builder().s(String.valueOf(liftRide.getLiftID())).build(),
-                            "vertical", AttributeValue.builder().n(String.valueOf(liftRide.getLiftID() * 10)).build(),
-                            GSIPartitionKey, AttributeValue.builder().s(gsiPk).build()
-//                            GSISortKey, AttributeValue.builder().s(gsiSk).build()
-                    );
-
-                    // Put item into DynamoDB
-                    putItem(dynamoDbClient, pk, sk, attributes);
-                }
-                break;
+    // The rides of the batch that were not persisted before; the batch itself without the dedup
+    List<LiftRide> removeDuplicates(List<LiftRide> batch) {
+        return deduplicator != null ? deduplicator.removeDuplicates(batch) : batch;
+    }
 
-            } catch (Exception e) {
-                retryCount++;
-                System.err.println("Batch processing failed. Retry " + retryCount + "/" + MAX_RETRIES);
-                try {
-                    Thread.sleep(backoffTime);
-                    backoffTime *= 2; // Exponential backoff
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
+    // Persists the batch or, when that fails, hands it to the retry queues or the spool
+    BatchOutcome storeBatch(List<LiftRide> batch) {
+        if (batch.isEmpty()) {
+            return BatchOutcome.PERSISTED;
         }
 
+        try {
+            persistBatch(batch);
+            return BatchOutcome.PERSISTED;
+
+        } catch (ProvisionedThroughputExceededException | RequestLimitExceededException e) {
+            // DynamoDB is throttling: the spool absorbs the batch and the replayer drains it at the controlled rate
+            return spoolBatch(batch);
 
-        if (retryCount > MAX_RETRIES) {
-            System.err.println("Failed to process batch after " + MAX_RETRIES + " retries.");
+        } catch (Exception e) {
+            if (retryPublisher == null) {
+                return spoolBatch(batch); // bulk load: no broker to retry through
+            }
+            // Other failures are retried later from the delay queues instead of sleeping in the delivery thread
+            System.err.println("Batch processing failed, scheduling delayed retry: " + e.getMessage());
+            try {
+                retryPublisher.republish(batch);
+                return BatchOutcome.RETRIED;
+            } catch (Exception ex) {
+                System.err.println("Failed to publish batch to retry queues: " + ex.getMessage());
+                return spoolBatch(batch);
+            }
         }
     }
 
-    private static void putItem(DynamoDbClient dynamoDbClient, String pk, String sk, Map<String, AttributeValue> attributes) {
-        Map<String, AttributeValue> item = new HashMap<>();
-        item.put(PartitionKey, AttributeValue.builder().s(pk).build());
-        item.put(SortKey, AttributeValue.builder().s(sk).build());
-        item.putAll(attributes);
+    // Batches waiting in the spool for the replayer
+    long getSpoolDepth() {
+        return spool.getDepth();
+    }
 
-        PutItemRequest request = PutItemRequest.builder()
-                .tableName(LiftRideConsumer.TABLE_NAME)
-                .item(item)
-                .build();
+    // Spooled batches the replayer gave up on, see WriteBehindSpool.park
+    long getSpoolParkedCount() {
+        return spool.getParkedCount();
+    }
 
+    // The messages are already acked, so the batch must not be dropped: keep it for the replayer
+    private BatchOutcome spoolBatch(List<LiftRide> batch) {
         try {
-            dynamoDbClient.putItem(request);
-            System.out.println("Successfully inserted item with PK: " + pk + " and SK: " + sk);
+            spool.append(batch);
+            return BatchOutcome.SPOOLED;
         } catch (Exception e) {
-            System.err.println("Unable to insert item: " + e.getMessage());
+            System.err.println("Failed to spool batch of " + batch.size() + " rides: " + e.getMessage());
+            return BatchOutcome.LOST;
+        }
+    }
+
+    // Writes a batch to DynamoDB and applies it to the Redis aggregates. Every step that can fail is idempotent and
+    // runs before the ones that are not (in-process deltas, persisted ride IDs), so a failed batch can be retried.
+    private void persistBatch(List<LiftRide> batch) {
+        try {
+            writeRateController.acquire(batch.size());
+            for (LiftRide liftRide : batch) {
+                liftRideStore.writeRide(liftRide);
+            }
+            writeRateController.onSuccess();
+        } catch (ProvisionedThroughputExceededException | RequestLimitExceededException e) {
+            writeRateController.onThrottle();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for DynamoDB write permits", e);
+        }
+
+        // Maintain Redis aggregates for the whole batch in one pipeline (idempotent, safe to retry)
+        if (aggregateWriter != null && aggregateStore == null) {
+            aggregateWriter.applyBatch(batch);
+        } else if (aggregateWriter != null) {
+            aggregateWriter.markSkierDays(batch);
+
+            // SkierIDs outside the store's dense range still go through the per-ride script
+            List<LiftRide> outOfRange = null;
+            for (LiftRide liftRide : batch) {
+                if (!aggregateStore.covers(liftRide.getSkierID())) {
+                    if (outOfRange == null) {
+                        outOfRange = new ArrayList<>();
+                    }
+                    outOfRange.add(liftRide);
+                }
+            }
+            if (outOfRange != null) {
+                aggregateWriter.applyBatch(outOfRange);
+            }
+        }
+
+        // Not best effort: with long GET cache TTLs a missed delete stays stale, so it fails the batch into retry.
+        // Redis goes first so near caches refill from the fresh L2.
+        Map<String, Set<String>> affectedTags = CacheInvalidationPublisher.affectedTags(batch);
+        if (responseCacheInvalidator != null) {
+            responseCacheInvalidator.invalidate(affectedTags);
+        }
+
+        // Best effort: a lost invalidation is bounded by the near cache TTL, so it must not fail the batch
+        if (invalidationPublisher != null) {
+            try {
+                invalidationPublisher.publish(affectedTags.keySet());
+            } catch (Exception e) {
+                System.err.println("Failed to publish cache invalidations: " + e.getMessage());
+            }
+        }
+
+        // Not best effort either: a read model missing a batch answers wrong until it is rebuilt. Last step that
+        // can fail, so a retry only republishes a batch whose publish failed.
+        if (rideFanoutPublisher != null) {
+            try {
+                rideFanoutPublisher.publish(batch);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to publish batch to the read models", e);
+            }
+        }
+
+        // Not idempotent, so only once nothing can fail the batch any more. The store marks the rides persisted
+        // once their deltas are flushed: a ride lost with the buffers on a crash must not be dropped as a duplicate.
+        if (aggregateStore != null) {
+            aggregateStore.addBatch(batch);
+            return;
+        }
+
+        // Best effort: the batch is persisted, a lost marker only lets a later redelivery through the dedup
+        if (aggregateWriter != null) {
+            try {
+                aggregateWriter.markPersisted(batch);
+            } catch (Exception e) {
+                System.err.println("Failed to record persisted ride IDs: " + e.getMessage());
+            }
         }
     }
 
@@ -0,0 +1,156 @@
+import model.LiftRide;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes lift rides to SkierTable using the layout selected by {@link StorageMode}.
+ */
+public class LiftRideStore {
+    private static final String TABLE_NAME = "SkierTable";
+    private static final String PartitionKey = "PK";
+    private static final String SortKey = "SK";
+    private static final String GSIPartitionKey = "GSI_PK";
+    private static final String GSISortKey = "GSI_SK";
+
+    // Ride IDs kept per skier-day item (about 20 bytes each), far below the 400 KB item limit
+    private static final int MAX_TRACKED_RIDE_IDS = 1000;
+
+    // Adds the ride to the skier-day counters and its ID to the rideIds number set, unless the set holds it already
+    private static final String COUNTER_UPDATE_EXPRESSION =
+            "ADD #vertical :vertical, #rides :one, #rideIds :rideIds SET " + GSIPartitionKey + " = :gsiPk";
+    private static final String COUNTER_CONDITION_EXPRESSION =
+            "attribute_not_exists(#rideIds) OR (NOT contains(#rideIds, :rideId) AND size(#rideIds) < :maxTracked)";
+    // Once the set is full, further rides are counted without their ID; their duplicates are left to RideDeduplicator
+    private static final String UNTRACKED_UPDATE_EXPRESSION =
+            "ADD #vertical :vertical, #rides :one SET " + GSIPartitionKey + " = :gsiPk";
+    private static final String UNTRACKED_CONDITION_EXPRESSION =
+            "size(#rideIds) >= :maxTracked AND NOT contains(#rideIds, :rideId)";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final StorageMode storageMode;
+
+    public LiftRideStore(DynamoDbClient dynamoDbClient, StorageMode storageMode) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.storageMode = storageMode;
+    }
+
+    public void writeRide(LiftRide liftRide) {
+        // APIS
+        // PK:SKIER#{skierID}
+        // SK:RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}
+        // GET/skiers/{skierID}/vertical: Get the total vertical for the skier for specified seasons at the specified resort (Params: resortID, seasonID(optional))
+        // GET/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers: get number of unique skiers at resort/season/day
+        // GET/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}: get ski day vertical for a skier
+        // No need for GSI
+
+        // Primary Key (PK) and Sort Key (SK)
+        String pk = "SKIER#" + liftRide.getSkierID();
+        String skierDay = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID() + "#DAY#" + liftRide.getDayID();
+
+        // GSI Keys
+        String gsiPk = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID() + "#DAY#" + liftRide.getDayID();
+//        String gsiSk = "RESORT#" + liftRide.getResortID() + "#SEASON#" + liftRide.getSeasonID();
+
+        if (storageMode == StorageMode.SKIER_DAY_COUNTER) {
+            updateSkierDayCounter(pk, skierDay, gsiPk, liftRide);
+            return;
+        }
+
+        String sk = skierDay + "#LIFT#" + liftRide.getLiftID();
+
+        // Item Attributes
+        Map<String, AttributeValue> attributes = Map.of(
+                "time", AttributeValue.builder().s(String.valueOf(liftRide.getTime())).build(),
+                "liftID", AttributeValue.builder().s(String.valueOf(liftRide.getLiftID())).build(),
+                "vertical", AttributeValue.builder().n(String.valueOf(liftRide.getVertical())).build(),
+                GSIPartitionKey, AttributeValue.builder().s(gsiPk).build()
+//                GSISortKey, AttributeValue.builder().s(gsiSk).build()
+        );
+
+        // Put item into DynamoDB
+        putItem(pk, sk, attributes);
+    }
+
+    private void updateSkierDayCounter(String pk, String sk, String gsiPk, LiftRide liftRide) {
+        Map<String, AttributeValue> key = Map.of(
+                PartitionKey, AttributeValue.builder().s(pk).build(),
+                SortKey, AttributeValue.builder().s(sk).build()
+        );
+        AttributeValue vertical = AttributeValue.builder().n(String.valueOf(liftRide.getVertical())).build();
+        AttributeValue one = AttributeValue.builder().n("1").build();
+        AttributeValue gsiPkValue = AttributeValue.builder().s(gsiPk).build();
+
+        // Rides published before ride IDs existed cannot be told apart here; RideDeduplicator cannot either
+        if (liftRide.getRideID() == null) {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .key(key)
+                    .updateExpression(UNTRACKED_UPDATE_EXPRESSION)
+                    .expressionAttributeNames(Map.of("#vertical", "vertical", "#rides", "rides"))
+                    .expressionAttributeValues(Map.of(":vertical", vertical, ":one", one, ":gsiPk", gsiPkValue))
+                    .build());
+            return;
+        }
+
+        String rideID = String.valueOf(liftRide.getRideID());
+        AttributeValue maxTracked = AttributeValue.builder().n(String.valueOf(MAX_TRACKED_RIDE_IDS)).build();
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .key(key)
+                    .updateExpression(COUNTER_UPDATE_EXPRESSION)
+                    .conditionExpression(COUNTER_CONDITION_EXPRESSION)
+                    .expressionAttributeNames(Map.of("#vertical", "vertical", "#rides", "rides", "#rideIds", "rideIds"))
+                    .expressionAttributeValues(Map.of(
+                            ":vertical", vertical,
+                            ":one", one,
+                            ":rideIds", AttributeValue.builder().ns(rideID).build(),
+                            ":rideId", AttributeValue.builder().n(rideID).build(),
+                            ":maxTracked", maxTracked,
+                            ":gsiPk", gsiPkValue
+                    ))
+                    .build());
+            return;
+        } catch (ConditionalCheckFailedException e) {
+            // Either already counted (redelivery or batch retry) or the set is full
+        }
+
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .key(key)
+                    .updateExpression(UNTRACKED_UPDATE_EXPRESSION)
+                    .conditionExpression(UNTRACKED_CONDITION_EXPRESSION)
+                    .expressionAttributeNames(Map.of("#vertical", "vertical", "#rides", "rides", "#rideIds", "rideIds"))
+                    .expressionAttributeValues(Map.of(
+                            ":vertical", vertical,
+                            ":one", one,
+                            ":rideId", AttributeValue.builder().n(rideID).build(),
+                            ":maxTracked", maxTracked,
+                            ":gsiPk", gsiPkValue
+                    ))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Ride already counted, nothing to do
+        }
+    }
+
+    private void putItem(String pk, String sk, Map<String, AttributeValue> attributes) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(PartitionKey, AttributeValue.builder().s(pk).build());
+        item.put(SortKey, AttributeValue.builder().s(sk).build());
+        item.putAll(attributes);
+
+        PutItemRequest request = PutItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .item(item)
+                .build();
+
+        // Failures propagate so the caller can retry or spool the batch instead of losing the ride
+        dynamoDbClient.putItem(request);
+        System.out.println("Successfully inserted item with PK: " + pk + " and SK: " + sk);
+    }
+}
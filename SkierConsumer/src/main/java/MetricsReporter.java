@@ -0,0 +1,48 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named gauges that are periodically printed to stdout as one "[metrics]" line.
+ *
+ * Keep in sync between SkierConsumer and SkierGetConsumer.
+ */
+public class MetricsReporter {
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService scheduler;
+    private static volatile String instance; // labels the lines when several instances log to one place
+
+    public static void register(String name, Supplier<Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public static void setInstance(String instanceId) {
+        instance = instanceId;
+    }
+
+    public static synchronized void start(int intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(MetricsReporter::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public static void report() {
+        if (gauges.isEmpty()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(instance == null ? "[metrics]" : "[metrics instance=" + instance + "]");
+        for (Map.Entry<String, Supplier<Number>> gauge : gauges.entrySet()) {
+            line.append(' ').append(gauge.getKey()).append('=').append(gauge.getValue().get());
+        }
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,127 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import model.LiftRide;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Consumes exactly one consistent-hash partition queue on its own channel.
+ *
+ * RabbitMQ dispatches the deliveries of a channel one at a time; the pending batch is only shared with the
+ * linger check, so the monitor guarding it is uncontended.
+ */
+public class PartitionWorker {
+    private static final int STOP_TIMEOUT_SECONDS = 30;
+
+    private final int partition;
+    private final String queueName;
+    private final Channel channel;
+    private final int batchSize;
+    private final Consumer<List<LiftRide>> batchProcessor;
+    private final Gson gson = new Gson();
+
+    private final List<LiftRide> batch = new ArrayList<>(); // guarded by this
+    private long batchStartNanos;
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private PrefetchController prefetchController;
+    private PrefetchController.ChannelStats prefetch;
+    private String consumerTag;
+
+    public PartitionWorker(int partition, String queueName, Channel channel, int batchSize, Consumer<List<LiftRide>> batchProcessor) {
+        this.partition = partition;
+        this.queueName = queueName;
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.batchProcessor = batchProcessor;
+    }
+
+    // The channel's prefetch is sized by the controller like every other consumer channel
+    public void start(PrefetchController prefetchController) throws IOException {
+        this.prefetchController = prefetchController;
+        prefetch = prefetchController.register();
+        prefetch.apply(channel);
+        consumerTag = channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String tag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+                long start = System.nanoTime();
+                prefetch.arrived();
+                LiftRide liftRide = parseLiftRide(new String(body, StandardCharsets.UTF_8));
+                if (liftRide != null) {
+                    liftRide.setRedelivered(envelope.isRedeliver());
+                    liftRide.setRetryAttempt(RetryPublisher.attemptOf(properties));
+                    add(liftRide);
+                }
+                channel.basicAck(envelope.getDeliveryTag(), false);
+                prefetch.record(System.nanoTime() - start);
+                prefetch.apply(channel);
+            }
+
+            @Override
+            public void handleCancelOk(String tag) {
+                // Dispatched after the last delivery, so nothing is added to the batch after this flush
+                flush();
+                cancelled.countDown();
+            }
+        });
+        System.out.println("Partition " + partition + " assigned, consuming " + queueName);
+    }
+
+    // Persists the partial batch once its oldest ride waited maxAgeMs, so rides are not held back at low traffic
+    public synchronized void flushIfOlderThan(long maxAgeMs) {
+        if (!batch.isEmpty() && System.nanoTime() - batchStartNanos >= TimeUnit.MILLISECONDS.toNanos(maxAgeMs)) {
+            flush();
+        }
+    }
+
+    private synchronized void add(LiftRide liftRide) {
+        if (batch.isEmpty()) {
+            batchStartNanos = System.nanoTime();
+        }
+        batch.add(liftRide);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private synchronized void flush() {
+        if (!batch.isEmpty()) {
+            batchProcessor.accept(batch);
+            batch.clear();
+        }
+    }
+
+    // Stops consuming and flushes the pending batch so the next owner of the partition starts clean
+    public void stop() {
+        try {
+            channel.basicCancel(consumerTag);
+            if (!cancelled.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Partition " + partition + " did not flush within " + STOP_TIMEOUT_SECONDS + "s");
+            }
+            prefetchController.unregister(prefetch);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error stopping partition " + partition + ": " + e.getMessage());
+        }
+        System.out.println("Partition " + partition + " released");
+    }
+
+    private LiftRide parseLiftRide(String message) {
+        try {
+            return gson.fromJson(message, LiftRide.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import model.LiftRide;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Skier-partitioned consumption: the servlet publishes rides to a consistent-hash exchange with the skierID as
+ * routing key, which spreads them over a fixed set of partition queues. Every queue is owned by exactly one
+ * {@link PartitionWorker} across all consumer instances.
+ *
+ * Instances register a heartbeat in a Redis sorted set; each instance owns the partitions p with
+ * p % liveInstances == its index in the sorted member list, and re-evaluates that periodically so partitions
+ * rebalance when instances join or leave. The partition queues use single-active-consumer, so while ownership
+ * moves the new owner only starts receiving once the previous owner has cancelled.
+ *
+ * Only the routing is partitioned: per-skier aggregation stays after the dedup in LiftRideConsumer.persistBatch,
+ * so partitions own no skier state of their own. A linger check persists partial batches at low traffic.
+ */
+public class PartitionedConsumer {
+    public static final String EXCHANGE_NAME = "skiersHashExchange";
+    private static final String QUEUE_PREFIX = "skiersQueue.p";
+    private static final String MEMBERS_KEY = "skierConsumer:members";
+    private static final long HEARTBEAT_INTERVAL_MS = 2000;
+    private static final long MEMBER_TIMEOUT_MS = 10000;
+
+    private final Connection connection;
+    private final JedisPool jedisPool;
+    private final int partitions;
+    private final int batchSize;
+    private final long lingerMs;
+    private final PrefetchController prefetchController;
+    private final Consumer<List<LiftRide>> batchProcessor;
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+    private final Map<Integer, PartitionWorker> workers = new ConcurrentHashMap<>();
+
+    public PartitionedConsumer(Connection connection, JedisPool jedisPool, int partitions, int batchSize, long lingerMs,
+                               PrefetchController prefetchController, Consumer<List<LiftRide>> batchProcessor) {
+        this.connection = connection;
+        this.jedisPool = jedisPool;
+        this.partitions = partitions;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.prefetchController = prefetchController;
+        this.batchProcessor = batchProcessor;
+    }
+
+    public void start() throws Exception {
+        declareTopology();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalance, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        // Own thread, so a rebalance waiting for a worker to stop does not hold back the other partitions' batches
+        ScheduledExecutorService lingerScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lingerScheduler.scheduleWithFixedDelay(this::flushLingering, lingerMs, lingerMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::leave));
+
+        MetricsReporter.register("partitions.owned", workers::size);
+    }
+
+    public static String queueName(int partition) {
+        return QUEUE_PREFIX + partition;
+    }
+
+    private void declareTopology() throws Exception {
+        Channel channel = connection.createChannel();
+        try {
+            channel.exchangeDeclare(EXCHANGE_NAME, "x-consistent-hash", true);
+            for (int p = 0; p < partitions; p++) {
+                channel.queueDeclare(queueName(p), true, false, false, Map.of("x-single-active-consumer", true));
+                // For the consistent-hash exchange the binding key is the weight of the queue on the hash ring
+                channel.queueBind(queueName(p), EXCHANGE_NAME, "1");
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Heartbeats this instance and starts / stops partition workers to match the current membership
+    private synchronized void rebalance() {
+        try {
+            List<String> members;
+            try (Jedis jedis = jedisPool.getResource()) {
+                long now = System.currentTimeMillis();
+                jedis.zadd(MEMBERS_KEY, now, instanceId);
+                jedis.zremrangeByScore(MEMBERS_KEY, 0, now - MEMBER_TIMEOUT_MS);
+                members = new ArrayList<>(jedis.zrange(MEMBERS_KEY, 0, -1));
+            }
+            members.sort(null);
+            int index = members.indexOf(instanceId);
+            if (index < 0) {
+                return;
+            }
+
+            for (int p = 0; p < partitions; p++) {
+                boolean owned = p % members.size() == index;
+                if (owned && !workers.containsKey(p)) {
+                    PartitionWorker worker = new PartitionWorker(p, queueName(p), connection.createChannel(), batchSize, batchProcessor);
+                    worker.start(prefetchController);
+                    workers.put(p, worker);
+                } else if (!owned && workers.containsKey(p)) {
+                    workers.remove(p).stop();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Partition rebalance failed: " + e.getMessage());
+        }
+    }
+
+    private void flushLingering() {
+        for (PartitionWorker worker : workers.values()) {
+            try {
+                worker.flushIfOlderThan(lingerMs);
+            } catch (Exception e) {
+                System.err.println("Linger flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void leave() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zrem(MEMBERS_KEY, instanceId);
+        } catch (Exception e) {
+            System.err.println("Failed to leave partition membership: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import model.LiftRide;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maintains the skier-day and skier-resort-season vertical aggregates and the per resort-day skier bitmaps
+ * in Redis as rides are persisted, so the GET consumer can answer API1 / API2 / API3 with a single
+ * BITCOUNT / HGET / HMGET instead of a DynamoDB query.
+ */
+public class RedisAggregateWriter {
+    // Seconds an applied-ride marker set is kept; redeliveries older than this would be counted twice
+    private static final int APPLIED_RIDES_TTL = 7 * 24 * 3600;
+    // Seconds a per-hour set of persisted ride IDs is kept for RideDeduplicator
+    private static final int PERSISTED_RIDE_IDS_TTL = 25 * 3600;
+
+    // Applies a ride's increments only if the ride was not applied before (idempotent on redelivery).
+    // KEYS: appliedRides, dayVerticalAggregate, seasonVerticalAggregate
+    // ARGV: rideMember, dayField, seasonField, vertical, markerTtl
+    private static final String APPLY_RIDE_SCRIPT =
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 1 then " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[5]) " +
+            "  redis.call('HINCRBY', KEYS[2], ARGV[2], ARGV[4]) " +
+            "  redis.call('HINCRBY', KEYS[3], ARGV[3], ARGV[4]) " +
+            "  return 1 " +
+            "end " +
+            "return 0";
+
+    private final JedisPool jedisPool;
+    private final int maxSkierID;
+
+    public RedisAggregateWriter(JedisPool jedisPool, int maxSkierID) {
+        this.jedisPool = jedisPool;
+        this.maxSkierID = maxSkierID;
+    }
+
+    // Applies all rides of a consumer batch in one pipelined round trip
+    public void applyBatch(List<LiftRide> batch) {
+        apply(batch, true);
+    }
+
+    // Only sets the unique-skier bits; used when verticals are aggregated in process by SkierDayAggregateStore
+    public void markSkierDays(List<LiftRide> batch) {
+        apply(batch, false);
+    }
+
+    private void apply(List<LiftRide> batch, boolean withVerticals) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            String markerTtl = String.valueOf(APPLIED_RIDES_TTL);
+            Set<String> skierDays = new HashSet<>();
+
+            for (LiftRide liftRide : batch) {
+                if (withVerticals) {
+                    pipeline.eval(APPLY_RIDE_SCRIPT,
+                            List.of(
+                                    RedisKeys.appliedRides(liftRide.getSkierID(), liftRide.getResortID(), liftRide.getSeasonID(), liftRide.getDayID()),
+                                    RedisKeys.dayVerticalAggregate(liftRide.getSkierID()),
+                                    RedisKeys.seasonVerticalAggregate(liftRide.getSkierID(), liftRide.getResortID())
+                            ),
+                            List.of(
+                                    rideMember(liftRide),
+                                    RedisKeys.dayField(liftRide.getResortID(), liftRide.getSeasonID(), liftRide.getDayID()),
+                                    String.valueOf(liftRide.getSeasonID()),
+                                    String.valueOf(liftRide.getVertical()),
+                                    markerTtl
+                            ));
+                }
+
+                // The servlet rejects larger skierIDs; one that got past it must not grow the bitmap to its offset
+                if (liftRide.getSkierID() > maxSkierID) {
+                    continue;
+                }
+                // SETBIT is idempotent, so only the first ride of a skier-day in the batch needs to set it
+                String bitmapKey = RedisKeys.uniqueSkiersBitmap(liftRide.getResortID(), liftRide.getSeasonID(), liftRide.getDayID());
+                if (skierDays.add(bitmapKey + ":" + liftRide.getSkierID())) {
+                    pipeline.setbit(bitmapKey, liftRide.getSkierID(), true);
+                }
+            }
+
+            pipeline.sync();
+        }
+    }
+
+    // Records the batch's ride IDs in the exact store behind RideDeduplicator's Bloom filter. Only called once every
+    // other step of the batch succeeded: a ride found here is dropped as a duplicate, so a batch that failed
+    // half-way must not be found here on its retry.
+    public void markPersisted(List<LiftRide> batch) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Set<String> rideIdKeys = new HashSet<>();
+            for (LiftRide liftRide : batch) {
+                if (liftRide.getRideID() != null) {
+                    String rideIdsKey = RedisKeys.persistedRideIds(liftRide.getRideID());
+                    pipeline.sadd(rideIdsKey, String.valueOf(liftRide.getRideID()));
+                    if (rideIdKeys.add(rideIdsKey)) {
+                        pipeline.expire(rideIdsKey, PERSISTED_RIDE_IDS_TTL);
+                    }
+                }
+            }
+            pipeline.sync();
+        }
+    }
+
+    // Rides stamped with an ID are told apart by it; older rides fall back to their (time, liftID)
+    private static String rideMember(LiftRide liftRide) {
+        return liftRide.getRideID() != null ? String.valueOf(liftRide.getRideID()) : liftRide.getTime() + ":" + liftRide.getLiftID();
+    }
+}
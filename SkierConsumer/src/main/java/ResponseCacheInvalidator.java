@@ -0,0 +1,53 @@
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deletes the GET consumer's cached responses (L2, in Redis) that a persisted batch made stale.
+ *
+ * The stale fields of every cache hash a batch touches (see CacheInvalidationPublisher.affectedTags) are
+ * deleted in one pipeline. Each field's version counter is bumped as well, so a GET that was loading from
+ * DynamoDB while the batch was written does not put its stale value back (see ResponseCache in SkierGetConsumer).
+ * With this the GET cache TTL only bounds memory, not staleness.
+ */
+public class ResponseCacheInvalidator {
+    // KEYS: hash, then one version key per field; ARGV: version TTL, then the fields
+    private static final String INVALIDATE_SCRIPT =
+            "for i = 2, #KEYS do " +
+            "  redis.call('INCR', KEYS[i]) " +
+            "  redis.call('EXPIRE', KEYS[i], ARGV[1]) " +
+            "end " +
+            "return redis.call('HDEL', KEYS[1], unpack(ARGV, 2))";
+
+    private final JedisPool jedisPool;
+    private final String versionTtl;
+
+    // versionTtlSeconds should be at least the GET cache TTL
+    public ResponseCacheInvalidator(JedisPool jedisPool, int versionTtlSeconds) {
+        this.jedisPool = jedisPool;
+        this.versionTtl = String.valueOf(versionTtlSeconds);
+    }
+
+    public void invalidate(Map<String, Set<String>> fieldsByTag) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Set<String>> tag : fieldsByTag.entrySet()) {
+                List<String> keys = new ArrayList<>();
+                List<String> args = new ArrayList<>();
+                keys.add(tag.getKey());
+                args.add(versionTtl);
+                for (String field : tag.getValue()) {
+                    keys.add(RedisKeys.cacheVersion(tag.getKey(), field));
+                    args.add(field);
+                }
+                pipeline.eval(INVALIDATE_SCRIPT, keys, args);
+            }
+            pipeline.sync();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import model.LiftRide;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules failed rides for a later attempt without blocking the consumer thread.
+ *
+ * Every delay tier is a fanout exchange bound to a queue with x-message-ttl = delay, whose expired messages are
+ * dead-lettered back to the exchange / queue the consumers read from. A ride on its n-th failure goes to tier n
+ * (attempt counted in the x-retry-attempt header); after the last tier it is parked in PARKING_QUEUE_NAME for
+ * manual inspection. Rides are published with their skierID as routing key, so with a consistent-hash
+ * dead-letter exchange they return to the same partition.
+ */
+public class RetryPublisher {
+    public static final String RETRY_ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String PARKING_QUEUE_NAME = "skiersQueue.parking";
+    private static final int CHANNEL_POOL_SIZE = 8;
+
+    private final long[] delaysMs;
+    private final String queuePrefix;
+    private final String deadLetterExchange;
+    private final String deadLetterRoutingKey;
+    private final RMQChannelPool channelPool;
+    private final Gson gson = new Gson();
+
+    // deadLetterRoutingKey == null keeps the ride's own routing key (its skierID) when it is dead-lettered
+    public RetryPublisher(Connection connection, long[] delaysMs, String queuePrefix,
+                          String deadLetterExchange, String deadLetterRoutingKey) throws Exception {
+        this.delaysMs = delaysMs;
+        this.queuePrefix = queuePrefix;
+        this.deadLetterExchange = deadLetterExchange;
+        this.deadLetterRoutingKey = deadLetterRoutingKey;
+        this.channelPool = new RMQChannelPool(CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
+        declareTopology();
+    }
+
+    public static int attemptOf(AMQP.BasicProperties properties) {
+        Map<String, Object> headers = properties.getHeaders();
+        Object attempt = headers == null ? null : headers.get(RETRY_ATTEMPT_HEADER);
+        return attempt instanceof Number ? ((Number) attempt).intValue() : 0;
+    }
+
+    // Publishes every ride of a failed batch to the delay tier of its next attempt, or parks it
+    public void republish(List<LiftRide> batch) throws Exception {
+        Channel channel = channelPool.borrowObject();
+        try {
+            for (LiftRide liftRide : batch) {
+                int attempt = liftRide.getRetryAttempt();
+                byte[] body = gson.toJson(liftRide).getBytes(StandardCharsets.UTF_8);
+                AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                        .deliveryMode(2)
+                        .headers(Map.of(RETRY_ATTEMPT_HEADER, attempt + 1))
+                        .build();
+
+                if (attempt < delaysMs.length) {
+                    channel.basicPublish(tierName(attempt), String.valueOf(liftRide.getSkierID()), properties, body);
+                } else {
+                    channel.basicPublish("", PARKING_QUEUE_NAME, properties, body);
+                }
+            }
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+
+    // Messages waiting in the given delay tier
+    public long getQueueDepth(int tier) {
+        Channel channel = null;
+        try {
+            channel = channelPool.borrowObject();
+            return channel.messageCount(tierName(tier));
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            try {
+                channelPool.returnObject(channel);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    public long getParkedCount() {
+        Channel channel = null;
+        try {
+            channel = channelPool.borrowObject();
+            return channel.messageCount(PARKING_QUEUE_NAME);
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            try {
+                channelPool.returnObject(channel);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    public int getTierCount() {
+        return delaysMs.length;
+    }
+
+    public long getTierDelayMs(int tier) {
+        return delaysMs[tier];
+    }
+
+    private void declareTopology() throws Exception {
+        Channel channel = channelPool.borrowObject();
+        try {
+            for (int tier = 0; tier < delaysMs.length; tier++) {
+                Map<String, Object> arguments = new HashMap<>();
+                arguments.put("x-message-ttl", delaysMs[tier]);
+                arguments.put("x-dead-letter-exchange", deadLetterExchange);
+                if (deadLetterRoutingKey != null) {
+                    arguments.put("x-dead-letter-routing-key", deadLetterRoutingKey);
+                }
+
+                channel.exchangeDeclare(tierName(tier), BuiltinExchangeType.FANOUT, true);
+                channel.queueDeclare(tierName(tier), true, false, false, arguments);
+                channel.queueBind(tierName(tier), tierName(tier), "");
+            }
+            channel.queueDeclare(PARKING_QUEUE_NAME, true, false, false, null);
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+
+    // Exchange and queue of a tier share the name, e.g. skiersQueue.retry.5000
+    private String tierName(int tier) {
+        return queuePrefix + ".retry." + delaysMs[tier];
+    }
+}
@@ -0,0 +1,116 @@
+import model.LiftRide;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops rides that were already persisted, so increment-based aggregation (counter items, in-process deltas)
+ * stays exact when RabbitMQ redelivers.
+ *
+ * Every ride ID is checked against a local {@link RotatingBloomFilter}. Only filter hits and messages RabbitMQ
+ * flagged as redelivered (which may have been seen by another instance) are checked against the exact store:
+ * the per-hour Redis sets of persisted ride IDs written by {@link RedisAggregateWriter}. All other rides cost
+ * no Redis read.
+ */
+public class RideDeduplicator {
+    private final RotatingBloomFilter filter;
+    private final JedisPool jedisPool;
+    private final AtomicLong duplicatesDropped = new AtomicLong();
+    private final AtomicLong exactChecks = new AtomicLong();
+
+    public RideDeduplicator(RotatingBloomFilter filter, JedisPool jedisPool) {
+        this.filter = filter;
+        this.jedisPool = jedisPool;
+    }
+
+    // Returns the batch without already persisted rides (the same list if nothing was dropped)
+    public List<LiftRide> removeDuplicates(List<LiftRide> batch) {
+        List<LiftRide> candidates = null;
+        for (LiftRide liftRide : batch) {
+            Long rideID = liftRide.getRideID();
+            if (rideID == null) {
+                continue;
+            }
+            if (liftRide.isRedelivered() || filter.mightContain(rideID)) {
+                if (candidates == null) {
+                    candidates = new ArrayList<>();
+                }
+                candidates.add(liftRide);
+            } else {
+                filter.put(rideID);
+            }
+        }
+        if (candidates == null) {
+            return batch;
+        }
+
+        List<LiftRide> duplicates = confirmDuplicates(candidates);
+        for (LiftRide candidate : candidates) {
+            filter.put(candidate.getRideID());
+            // A ride ID repeated inside the batch is not in the exact store yet: keep only its first occurrence
+            if (!duplicates.contains(candidate) && hasEarlierOccurrence(batch, candidate)) {
+                duplicates.add(candidate);
+            }
+        }
+        if (duplicates.isEmpty()) {
+            return batch;
+        }
+
+        List<LiftRide> unique = new ArrayList<>(batch.size());
+        for (LiftRide liftRide : batch) {
+            if (!duplicates.contains(liftRide)) {
+                unique.add(liftRide);
+            }
+        }
+        duplicatesDropped.addAndGet(batch.size() - unique.size());
+        return unique;
+    }
+
+    public long getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    public long getExactChecks() {
+        return exactChecks.get();
+    }
+
+    private List<LiftRide> confirmDuplicates(List<LiftRide> candidates) {
+        List<LiftRide> duplicates = new ArrayList<>();
+        exactChecks.addAndGet(candidates.size());
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Boolean>> persisted = new ArrayList<>(candidates.size());
+            for (LiftRide candidate : candidates) {
+                persisted.add(pipeline.sismember(RedisKeys.persistedRideIds(candidate.getRideID()), String.valueOf(candidate.getRideID())));
+            }
+            pipeline.sync();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (persisted.get(i).get()) {
+                    duplicates.add(candidates.get(i));
+                }
+            }
+        } catch (Exception e) {
+            // Without the exact store we cannot tell, so keep the rides rather than lose data
+            System.err.println("Duplicate check failed, keeping " + candidates.size() + " rides: " + e.getMessage());
+        }
+
+        return duplicates;
+    }
+
+    private static boolean hasEarlierOccurrence(List<LiftRide> batch, LiftRide candidate) {
+        for (LiftRide liftRide : batch) {
+            if (liftRide == candidate) {
+                return false;
+            }
+            if (candidate.getRideID().equals(liftRide.getRideID())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
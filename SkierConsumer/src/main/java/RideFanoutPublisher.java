@@ -0,0 +1,56 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import model.LiftRide;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Publishes every persisted batch to a fanout exchange, the feed of the GET consumers' in-memory read models
+ * (see ReadModelFeed in SkierGetConsumer).
+ *
+ * One persistent message per batch holds [skierID, resortID, seasonID, dayID, vertical] per ride. Its message ID
+ * is unique per batch, so a read model that replays unacked messages after a restart skips batches its snapshot
+ * already holds.
+ */
+public class RideFanoutPublisher {
+    public static final String RIDE_FANOUT_EXCHANGE = "persistedRidesExchange"; // ReadModelFeed in SkierGetConsumer
+    private static final int CHANNEL_POOL_SIZE = 4;
+
+    private final RMQChannelPool channelPool;
+    private final Gson gson = new Gson();
+
+    public RideFanoutPublisher(Connection connection) throws Exception {
+        this.channelPool = new RMQChannelPool(CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
+        Channel channel = channelPool.borrowObject();
+        try {
+            channel.exchangeDeclare(RIDE_FANOUT_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+
+    public void publish(List<LiftRide> batch) throws Exception {
+        int[][] rides = new int[batch.size()][];
+        for (int i = 0; i < rides.length; i++) {
+            LiftRide liftRide = batch.get(i);
+            rides[i] = new int[]{liftRide.getSkierID(), liftRide.getResortID(), liftRide.getSeasonID(),
+                    liftRide.getDayID(), liftRide.getVertical()};
+        }
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .messageId(UUID.randomUUID().toString())
+                .deliveryMode(2) // persistent: the read model queues outlive broker restarts
+                .build();
+
+        Channel channel = channelPool.borrowObject();
+        try {
+            channel.basicPublish(RIDE_FANOUT_EXCHANGE, "", properties, gson.toJson(rides).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            channelPool.returnObject(channel);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-windowed Bloom filter over 64-bit IDs, made of several generations that rotate.
+ *
+ * Inserts go to the newest generation and lookups check all of them. Every window / generations the oldest
+ * generation is cleared and becomes the newest, so an ID is remembered for at least
+ * window * (generations - 1) / generations. Bits are set with CAS, so all methods are thread-safe.
+ */
+public class RotatingBloomFilter {
+    private final AtomicLongArray[] generations;
+    private final int bitsPerGeneration;
+    private final int hashFunctions;
+    private final long rotateIntervalMs;
+    private final LongSupplier clock;
+    private volatile int current;
+    private volatile long nextRotationMs;
+
+    // Sized for expectedIds per generation at the given false-positive probability
+    public RotatingBloomFilter(long expectedIds, double falsePositiveRate, int generations, long windowMs) {
+        this(expectedIds, falsePositiveRate, generations, windowMs, System::currentTimeMillis);
+    }
+
+    RotatingBloomFilter(long expectedIds, double falsePositiveRate, int generations, long windowMs, LongSupplier clock) {
+        this.clock = clock;
+        long bits = (long) Math.ceil(-expectedIds * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitsPerGeneration = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitsPerGeneration / expectedIds * Math.log(2)));
+        this.generations = new AtomicLongArray[generations];
+        for (int i = 0; i < generations; i++) {
+            this.generations[i] = new AtomicLongArray((bitsPerGeneration + 63) / 64);
+        }
+        this.rotateIntervalMs = windowMs / generations;
+        this.nextRotationMs = clock.getAsLong() + rotateIntervalMs;
+    }
+
+    public boolean mightContain(long id) {
+        rotateIfDue();
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (AtomicLongArray generation : generations) {
+            if (containsAll(generation, h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(long id) {
+        rotateIfDue();
+        AtomicLongArray generation = generations[current];
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+            long old;
+            do {
+                old = generation.get(word);
+            } while ((old & mask) == 0 && !generation.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    public long getBitsPerGeneration() {
+        return bitsPerGeneration;
+    }
+
+    private boolean containsAll(AtomicLongArray generation, long h1, long h2) {
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            if ((generation.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bitIndex(long hash) {
+        return (int) ((hash >>> 1) % bitsPerGeneration);
+    }
+
+    private void rotateIfDue() {
+        if (clock.getAsLong() < nextRotationMs) {
+            return;
+        }
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (now < nextRotationMs) {
+                return;
+            }
+            int oldest = (current + 1) % generations.length;
+            AtomicLongArray generation = generations[oldest];
+            for (int i = 0; i < generation.length(); i++) {
+                generation.set(i, 0);
+            }
+            current = oldest;
+            nextRotationMs = now + rotateIntervalMs;
+        }
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87cdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,308 @@
+import model.LiftRide;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-process vertical deltas per skier-day, kept off-heap and updated without allocation.
+ *
+ * Every active resort-season-day gets one direct buffer of (maxSkierID + 1) ints indexed by skierID, updated
+ * with atomic getAndAdd from any consumer thread. A flusher periodically swaps every non-zero slot back to 0
+ * and applies the deltas to the Redis day / season vertical aggregates. Days without updates for
+ * IDLE_FLUSHES_BEFORE_EVICT flushes are released, so memory depends on the number of active days and not on
+ * ride volume.
+ *
+ * Deltas go out in numbered chunks, one script call each, which applies a chunk only if its number is above the
+ * last one applied by this store. A chunk whose call failed may have been applied, so it is resent as is, and the
+ * chunks after it wait: a retry never counts a delta twice. The batches whose deltas were added are handed to
+ * onFlushed only once a flush left no chunk pending, so their rides are not marked persisted before their
+ * verticals are in Redis.
+ */
+public class SkierDayAggregateStore {
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final int IDLE_FLUSHES_BEFORE_EVICT = 60;
+    private static final int SKIERS_PER_CHUNK = 1000;
+    // Rides held for onFlushed while Redis is down; beyond this their markers are given up
+    private static final int MAX_UNFLUSHED_RIDES = 1 << 20;
+    // Seconds the last applied chunk number is kept; refreshed by every chunk
+    private static final int FLUSH_SEQUENCE_TTL = 7 * 24 * 3600;
+
+    // Applies one chunk of a day's deltas unless a chunk with this or a higher number was applied before.
+    // KEYS: flushSequence, then dayVerticalAggregate and seasonVerticalAggregate per skier
+    // ARGV: chunkNumber, sequenceTtl, dayField, seasonField, then one delta per skier
+    private static final String APPLY_CHUNK_SCRIPT =
+            "if tonumber(redis.call('GET', KEYS[1]) or '0') >= tonumber(ARGV[1]) then " +
+            "  return 0 " +
+            "end " +
+            "for i = 5, #ARGV do " +
+            "  redis.call('HINCRBY', KEYS[2 * i - 8], ARGV[3], ARGV[i]) " +
+            "  redis.call('HINCRBY', KEYS[2 * i - 7], ARGV[4], ARGV[i]) " +
+            "end " +
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "return 1";
+
+    private final JedisPool jedisPool;
+    private final int maxSkierID;
+    private final Consumer<List<LiftRide>> onFlushed;
+    private final String flushSequenceKey = RedisKeys.aggregateFlushSequence(UUID.randomUUID());
+
+    // Active days, replaced copy-on-write so lookups never lock or allocate
+    private volatile ActiveDays active = new ActiveDays(new long[0], new DayDeltas[0]);
+    private final Object activeDaysLock = new Object();
+    // Evicted days are drained once more on the next flush, in case a writer still held a reference
+    private final List<DayDeltas> retired = new ArrayList<>();
+
+    // Flusher-only scratch space for the deltas taken out of one day
+    private final int[] flushSkiers;
+    private final int[] flushDeltas;
+
+    // Batches whose deltas were added since the flusher last took them
+    private final ConcurrentLinkedQueue<List<LiftRide>> addedBatches = new ConcurrentLinkedQueue<>();
+    // Flusher-only: rides whose deltas are not all in Redis yet, the chunk that failed and the last chunk number
+    private final List<LiftRide> unflushedRides = new ArrayList<>();
+    private Chunk pendingChunk;
+    private long chunkNumber;
+
+    public SkierDayAggregateStore(JedisPool jedisPool, int maxSkierID, Consumer<List<LiftRide>> onFlushed) {
+        this.jedisPool = jedisPool;
+        this.maxSkierID = maxSkierID;
+        this.onFlushed = onFlushed;
+        this.flushSkiers = new int[maxSkierID + 1];
+        this.flushDeltas = new int[maxSkierID + 1];
+    }
+
+    public void startFlusher(long intervalMs) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aggregate-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    public boolean covers(int skierID) {
+        return skierID >= 0 && skierID <= maxSkierID;
+    }
+
+    // Adds a ride's vertical; returns false when the skierID is outside the dense range and was not recorded
+    private boolean add(int skierID, int resortID, int seasonID, int dayID, int vertical) {
+        if (!covers(skierID)) {
+            return false;
+        }
+        DayDeltas day = dayDeltas(resortID, seasonID, dayID);
+        INTS.getAndAdd(day.verticals, skierID * Integer.BYTES, vertical);
+        return true;
+    }
+
+    // Adds the verticals of every ride in range; the batch goes to onFlushed once a flush made them durable
+    public void addBatch(List<LiftRide> batch) {
+        for (LiftRide liftRide : batch) {
+            add(liftRide.getSkierID(), liftRide.getResortID(), liftRide.getSeasonID(), liftRide.getDayID(), liftRide.getVertical());
+        }
+        addedBatches.add(new ArrayList<>(batch)); // callers reuse their batch list
+    }
+
+    // Number of resort-season-days currently holding an off-heap buffer
+    public int getActiveDays() {
+        return active.days.length;
+    }
+
+    public synchronized void flush() {
+        // Taken before the deltas, so every batch taken here has its deltas in this flush or an earlier one
+        for (List<LiftRide> batch; (batch = addedBatches.poll()) != null; ) {
+            unflushedRides.addAll(batch);
+        }
+        if (unflushedRides.size() > MAX_UNFLUSHED_RIDES) {
+            System.err.println("Dropping persisted markers of " + unflushedRides.size() + " rides still waiting for a flush");
+            unflushedRides.clear();
+        }
+
+        // A chunk that failed may have been applied; it goes out again before any new one
+        if (pendingChunk != null && !send(pendingChunk)) {
+            return;
+        }
+        pendingChunk = null;
+
+        List<DayDeltas> toFlush = new ArrayList<>(retired);
+        retired.clear();
+        toFlush.addAll(Arrays.asList(active.days));
+
+        boolean failed = false;
+        for (DayDeltas day : toFlush) {
+            int count = 0;
+            for (int skierID = 0; skierID <= maxSkierID; skierID++) {
+                int offset = skierID * Integer.BYTES;
+                if ((int) INTS.getVolatile(day.verticals, offset) != 0) {
+                    flushSkiers[count] = skierID;
+                    flushDeltas[count] = (int) INTS.getAndSet(day.verticals, offset, 0);
+                    count++;
+                }
+            }
+
+            if (count == 0) {
+                if (++day.idleFlushes == IDLE_FLUSHES_BEFORE_EVICT) {
+                    evict(day);
+                }
+                continue;
+            }
+            day.idleFlushes = 0;
+
+            for (int from = 0; from < count; from += SKIERS_PER_CHUNK) {
+                int to = Math.min(count, from + SKIERS_PER_CHUNK);
+                if (failed) {
+                    // Never sent: back into the buffer for the next flush
+                    for (int i = from; i < to; i++) {
+                        INTS.getAndAdd(day.verticals, flushSkiers[i] * Integer.BYTES, flushDeltas[i]);
+                    }
+                    continue;
+                }
+                Chunk chunk = new Chunk(++chunkNumber, day, Arrays.copyOfRange(flushSkiers, from, to),
+                        Arrays.copyOfRange(flushDeltas, from, to));
+                if (!send(chunk)) {
+                    pendingChunk = chunk;
+                    failed = true;
+                }
+            }
+            if (failed && day.evicted) {
+                retired.add(day);
+            }
+        }
+
+        if (!failed && !unflushedRides.isEmpty()) {
+            try {
+                onFlushed.accept(unflushedRides);
+            } catch (Exception e) {
+                System.err.println("Failed to hand over " + unflushedRides.size() + " flushed rides: " + e.getMessage());
+            }
+            unflushedRides.clear();
+        }
+    }
+
+    // One script call per chunk: applied whole or not at all
+    private boolean send(Chunk chunk) {
+        List<String> keys = new ArrayList<>(1 + 2 * chunk.skiers.length);
+        List<String> args = new ArrayList<>(4 + chunk.skiers.length);
+        keys.add(flushSequenceKey);
+        args.add(String.valueOf(chunk.number));
+        args.add(String.valueOf(FLUSH_SEQUENCE_TTL));
+        args.add(RedisKeys.dayField(chunk.day.resortID, chunk.day.seasonID, chunk.day.dayID));
+        args.add(String.valueOf(chunk.day.seasonID));
+        for (int i = 0; i < chunk.skiers.length; i++) {
+            keys.add(RedisKeys.dayVerticalAggregate(chunk.skiers[i]));
+            keys.add(RedisKeys.seasonVerticalAggregate(chunk.skiers[i], chunk.day.resortID));
+            args.add(String.valueOf(chunk.deltas[i]));
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.eval(APPLY_CHUNK_SCRIPT, keys, args);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to flush vertical deltas, will retry: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private DayDeltas dayDeltas(int resortID, int seasonID, int dayID) {
+        long key = dayKey(resortID, seasonID, dayID);
+        ActiveDays current = active;
+        for (int i = 0; i < current.keys.length; i++) {
+            if (current.keys[i] == key) {
+                return current.days[i];
+            }
+        }
+        return addDay(key, resortID, seasonID, dayID);
+    }
+
+    private DayDeltas addDay(long key, int resortID, int seasonID, int dayID) {
+        synchronized (activeDaysLock) {
+            ActiveDays current = active;
+            for (int i = 0; i < current.keys.length; i++) {
+                if (current.keys[i] == key) {
+                    return current.days[i];
+                }
+            }
+            DayDeltas day = new DayDeltas(resortID, seasonID, dayID, ByteBuffer.allocateDirect((maxSkierID + 1) * Integer.BYTES));
+            long[] keys = Arrays.copyOf(current.keys, current.keys.length + 1);
+            DayDeltas[] days = Arrays.copyOf(current.days, current.days.length + 1);
+            keys[keys.length - 1] = key;
+            days[days.length - 1] = day;
+            active = new ActiveDays(keys, days);
+            return day;
+        }
+    }
+
+    // Called from flush() once a day had no updates for IDLE_FLUSHES_BEFORE_EVICT flushes
+    private void evict(DayDeltas day) {
+        synchronized (activeDaysLock) {
+            ActiveDays current = active;
+            List<Long> keys = new ArrayList<>();
+            List<DayDeltas> days = new ArrayList<>();
+            for (int i = 0; i < current.days.length; i++) {
+                if (current.days[i] != day) {
+                    keys.add(current.keys[i]);
+                    days.add(current.days[i]);
+                }
+            }
+            active = new ActiveDays(keys.stream().mapToLong(Long::longValue).toArray(), days.toArray(new DayDeltas[0]));
+        }
+        day.evicted = true;
+        retired.add(day);
+    }
+
+    private static long dayKey(int resortID, int seasonID, int dayID) {
+        return ((long) resortID << 32) | ((long) (seasonID & 0x3FFFFF) << 10) | (dayID & 0x3FF);
+    }
+
+    private static class ActiveDays {
+        final long[] keys;
+        final DayDeltas[] days;
+
+        ActiveDays(long[] keys, DayDeltas[] days) {
+            this.keys = keys;
+            this.days = days;
+        }
+    }
+
+    private static class Chunk {
+        final long number;
+        final DayDeltas day;
+        final int[] skiers;
+        final int[] deltas;
+
+        Chunk(long number, DayDeltas day, int[] skiers, int[] deltas) {
+            this.number = number;
+            this.day = day;
+            this.skiers = skiers;
+            this.deltas = deltas;
+        }
+    }
+
+    private static class DayDeltas {
+        final int resortID;
+        final int seasonID;
+        final int dayID;
+        final ByteBuffer verticals;
+        int idleFlushes;
+        boolean evicted;
+
+        DayDeltas(int resortID, int seasonID, int dayID, ByteBuffer verticals) {
+            this.resortID = resortID;
+            this.seasonID = seasonID;
+            this.dayID = dayID;
+            this.verticals = verticals;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import model.LiftRide;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Background thread that drains the {@link WriteBehindSpool} into DynamoDB.
+ *
+ * Replayed writes go through the same {@link WriteRateController} permits as live traffic, so the spool
+ * drains at whatever rate DynamoDB currently accepts. After a failed replay the pause before the next
+ * attempt doubles (and resets after the next success), so an unavailable store is not hammered. Throttling is
+ * waited out however long it lasts, but a batch that fails otherwise maxAttempts times in a row is parked (see
+ * {@link WriteBehindSpool#park()}), so one poison batch does not block the spool behind it.
+ */
+public class SpoolReplayer implements Runnable {
+    private static final long MIN_FAILURE_PAUSE_MS = 100;
+    private static final long MAX_FAILURE_PAUSE_MS = 10000;
+    private static final long IDLE_INTERVAL_MS = 500;
+
+    private final WriteBehindSpool spool;
+    private final Consumer<List<LiftRide>> batchWriter;
+    private final int maxAttempts;
+    private long failurePauseMs = MIN_FAILURE_PAUSE_MS;
+    private int failedAttempts; // of the batch at the head of the spool, throttles not counted
+
+    public SpoolReplayer(WriteBehindSpool spool, Consumer<List<LiftRide>> batchWriter, int maxAttempts) {
+        this.spool = spool;
+        this.batchWriter = batchWriter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "spool-replayer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long pauseMs = 0;
+            try {
+                List<LiftRide> batch = spool.peek();
+                if (batch == null) {
+                    pauseMs = IDLE_INTERVAL_MS;
+                } else {
+                    batchWriter.accept(batch);
+                    spool.commit();
+                    failurePauseMs = MIN_FAILURE_PAUSE_MS;
+                    failedAttempts = 0;
+                }
+            } catch (ProvisionedThroughputExceededException | RequestLimitExceededException e) {
+                pauseMs = pause();
+                System.err.println("Spool replay throttled, next attempt in " + pauseMs + " ms: " + e.getMessage());
+            } catch (Exception e) {
+                if (++failedAttempts >= maxAttempts) {
+                    park(e);
+                    continue;
+                }
+                pauseMs = pause();
+                System.err.println("Spool replay failed (attempt " + failedAttempts + "), next attempt in " + pauseMs
+                        + " ms: " + e.getMessage());
+            }
+
+            if (pauseMs == 0) {
+                continue;
+            }
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long pause() {
+        long pauseMs = failurePauseMs;
+        failurePauseMs = Math.min(MAX_FAILURE_PAUSE_MS, failurePauseMs * 2);
+        return pauseMs;
+    }
+
+    private void park(Exception cause) {
+        failedAttempts = 0;
+        try {
+            spool.park();
+            System.err.println("Parked spooled batch after " + maxAttempts + " failed attempts: " + cause.getMessage());
+        } catch (Exception e) {
+            // Stays at the head and is retried; parking is attempted again after another maxAttempts failures
+            System.err.println("Failed to park spooled batch: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * DynamoDB layout of SkierTable, selected with dynamodb.storage.mode.
+ * Keep in sync between SkierConsumer and SkierGetConsumer.
+ */
+public enum StorageMode {
+    // One item per ride: SK RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}#LIFT#{liftID}
+    ITEM_PER_RIDE,
+    // One aggregate item per skier-day: SK RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID},
+    // updated with ADD vertical / rides and the ride IDs counted so far in the rideIds number set (first 1000)
+    SKIER_DAY_COUNTER
+}
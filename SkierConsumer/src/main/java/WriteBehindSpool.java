@@ -0,0 +1,231 @@
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import model.LiftRide;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable local write-behind log for batches that could not be written to DynamoDB.
+ *
+ * Batches are appended to memory-mapped, fixed-size segment files (segment-N.log) as
+ * [int length][int crc32][json payload] records. A length of 0 marks the end of the written part of a
+ * segment (new segments are zero-filled). The replay position is kept in a checkpoint file, so pending
+ * batches survive a process restart; a record whose CRC does not match is treated as a torn write and
+ * ends its segment. Batches that keep failing are parked in PARKED_FILE, one JSON batch per line, for a manual
+ * replay.
+ */
+public class WriteBehindSpool {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String PARKED_FILE = "parked.ndjson";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final Type BATCH_TYPE = new TypeToken<List<LiftRide>>() {}.getType();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final Gson gson = new Gson();
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+
+    // Segment id -> mapping of every segment that still holds unreplayed records
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private long writeSegment;
+    private int writeOffset;
+    private long readSegment;
+    private int readOffset;
+    // Position after the record returned by peek(), applied by commit()
+    private int peekedRecordEnd = -1;
+
+    public WriteBehindSpool(String directory, int segmentBytes) throws IOException {
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(this.directory);
+        recover();
+    }
+
+    // Appends a batch; called from consumer threads when a batch cannot be written now
+    public synchronized void append(List<LiftRide> batch) throws IOException {
+        byte[] payload = gson.toJson(batch).getBytes(StandardCharsets.UTF_8);
+        int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        if (recordBytes + 4 > segmentBytes) {
+            throw new IOException("Batch of " + recordBytes + " bytes does not fit in a spool segment");
+        }
+
+        if (writeOffset + recordBytes + 4 > segmentBytes) {
+            // Rotate: flush the full segment and start a new one; the trailing zero length ends the old one
+            segments.get(writeSegment).force();
+            writeSegment++;
+            writeOffset = 0;
+            segments.put(writeSegment, mapSegment(writeSegment));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer segment = segments.get(writeSegment).duplicate();
+        segment.position(writeOffset + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(payload);
+        // The length is written last so a partially written record is never read as complete
+        segment.putInt(writeOffset, payload.length);
+        writeOffset += recordBytes;
+        depth.incrementAndGet();
+    }
+
+    // Returns the oldest pending batch without removing it, or null when the spool is empty
+    public synchronized List<LiftRide> peek() throws IOException {
+        while (true) {
+            MappedByteBuffer segment = segments.get(readSegment);
+            byte[] payload = segment == null ? null : readRecord(segment, readOffset);
+            if (payload != null) {
+                peekedRecordEnd = readOffset + RECORD_HEADER_BYTES + payload.length;
+                return gson.fromJson(new String(payload, StandardCharsets.UTF_8), BATCH_TYPE);
+            }
+            if (readSegment >= writeSegment) {
+                return null;
+            }
+            // Older segment fully drained (or ends in a corrupt record): move on and delete it
+            segments.remove(readSegment);
+            Files.deleteIfExists(segmentPath(readSegment));
+            readSegment++;
+            readOffset = 0;
+            writeCheckpoint();
+        }
+    }
+
+    // Removes the batch returned by the last peek() once it has been written to DynamoDB
+    public synchronized void commit() throws IOException {
+        if (peekedRecordEnd < 0) {
+            return;
+        }
+        readOffset = peekedRecordEnd;
+        peekedRecordEnd = -1;
+        depth.decrementAndGet();
+        writeCheckpoint();
+    }
+
+    // Moves the batch returned by the last peek() to the parked file, so it no longer blocks the ones behind it
+    public synchronized void park() throws IOException {
+        if (peekedRecordEnd < 0) {
+            return;
+        }
+        byte[] payload = readRecord(segments.get(readSegment), readOffset);
+        byte[] line = (new String(payload, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(directory.resolve(PARKED_FILE), line,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        parked.incrementAndGet();
+        commit();
+    }
+
+    // Number of batches waiting to be replayed
+    public long getDepth() {
+        return depth.get();
+    }
+
+    // Batches parked by this process
+    public long getParkedCount() {
+        return parked.get();
+    }
+
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+
+        readSegment = ids.isEmpty() ? 0 : ids.get(0);
+        readOffset = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            String[] parts = Files.readString(checkpoint).trim().split(":");
+            readSegment = Long.parseLong(parts[0]);
+            readOffset = Integer.parseInt(parts[1]);
+        }
+
+        for (long id : ids) {
+            if (id < readSegment) {
+                Files.deleteIfExists(segmentPath(id));
+            } else {
+                segments.put(id, mapSegment(id));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(readSegment, mapSegment(readSegment));
+        }
+        writeSegment = segments.lastKey();
+
+        // Count pending records and find the end of the last segment
+        for (var entry : segments.entrySet()) {
+            int offset = entry.getKey() == readSegment ? readOffset : 0;
+            byte[] payload;
+            while ((payload = readRecord(entry.getValue(), offset)) != null) {
+                offset += RECORD_HEADER_BYTES + payload.length;
+                depth.incrementAndGet();
+            }
+            if (entry.getKey() == writeSegment) {
+                writeOffset = offset;
+            }
+        }
+        System.out.println("Spool recovered " + depth.get() + " pending batches from " + directory);
+    }
+
+    // Returns the payload of the record at offset, or null at the end of the segment or on a corrupt record
+    private byte[] readRecord(MappedByteBuffer segment, int offset) {
+        if (offset + RECORD_HEADER_BYTES > segmentBytes) {
+            return null;
+        }
+        int length = segment.getInt(offset);
+        if (length <= 0 || offset + RECORD_HEADER_BYTES + length > segmentBytes) {
+            return null;
+        }
+        int expectedCrc = segment.getInt(offset + 4);
+        byte[] payload = new byte[length];
+        ByteBuffer record = segment.duplicate();
+        record.position(offset + RECORD_HEADER_BYTES);
+        record.get(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            System.err.println("Spool record at " + offset + " failed CRC check, skipping rest of segment");
+            return null;
+        }
+        return payload;
+    }
+
+    private MappedByteBuffer mapSegment(long id) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, readSegment + ":" + readOffset);
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared AIMD (additive increase / multiplicative decrease) rate limiter for DynamoDB writes.
+ *
+ * Every writer acquires one permit per item before writing. While writes succeed the target rate grows by
+ * a fixed step per adjustment interval; on a throttling signal it is multiplied by the decrease factor,
+ * at most once per interval so one burst of throttled writes only cuts it once.
+ */
+public class WriteRateController {
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveIncrease;
+    private final double multiplicativeDecrease;
+    private final long adjustIntervalNanos;
+
+    private double rate;                 // permits (item writes) per second
+    private long nextFreeNanos;          // time at which the next permit becomes available
+    private long lastIncreaseNanos;
+    private long lastDecreaseNanos;
+    private final AtomicLong throttleCount = new AtomicLong();
+
+    public WriteRateController(double initialRate, double minRate, double maxRate,
+                               double additiveIncrease, double multiplicativeDecrease, long adjustIntervalMs) {
+        this.rate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.additiveIncrease = additiveIncrease;
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        this.adjustIntervalNanos = TimeUnit.MILLISECONDS.toNanos(adjustIntervalMs);
+        this.nextFreeNanos = System.nanoTime();
+        this.lastIncreaseNanos = nextFreeNanos;
+        this.lastDecreaseNanos = nextFreeNanos;
+    }
+
+    // Blocks until the given number of write permits is available at the current target rate
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Unused capacity is not banked beyond the present moment, so idle periods cannot cause bursts
+            nextFreeNanos = Math.max(nextFreeNanos, now);
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += (long) (permits * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Additive increase, at most once per adjustment interval and not within one interval of a decrease
+    public synchronized void onSuccess() {
+        long now = System.nanoTime();
+        if (now - Math.max(lastIncreaseNanos, lastDecreaseNanos) >= adjustIntervalNanos) {
+            rate = Math.min(maxRate, rate + additiveIncrease);
+            lastIncreaseNanos = now;
+        }
+    }
+
+    // Multiplicative decrease, at most once per adjustment interval
+    public synchronized void onThrottle() {
+        throttleCount.incrementAndGet();
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos >= adjustIntervalNanos) {
+            rate = Math.max(minRate, rate * multiplicativeDecrease);
+            lastDecreaseNanos = now;
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public long getThrottleCount() {
+        return throttleCount.get();
+    }
+}
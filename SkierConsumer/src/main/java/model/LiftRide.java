@@ -1,12 +1,17 @@
 package model;
 
 public class LiftRide {
+    private Long rideID; // time-sortable ID stamped by the servlet, null for rides published before it existed
     private Integer skierID;
     private Integer resortID;
     private Integer seasonID;
     private Integer dayID;
     private Integer time;
     private Integer liftID;
+    // Set from the RabbitMQ envelope, never serialized
+    private transient boolean redelivered;
+    // Failed attempts so far, from the x-retry-attempt header of a delayed retry
+    private transient int retryAttempt;
 
     public LiftRide(Integer skierID, Integer resortID, Integer seasonID, Integer dayID, Integer time, Integer liftID) {
         this.skierID = skierID;
@@ -27,6 +32,30 @@ public class LiftRide {
         this.liftID = Integer.parseInt(jsonBody.split("\"liftID\"")[1].split(":")[1].trim().split("}")[0]);
     }
 
+    public Long getRideID() {
+        return rideID;
+    }
+
+    public void setRideID(Long rideID) {
+        this.rideID = rideID;
+    }
+
+    public boolean isRedelivered() {
+        return redelivered;
+    }
+
+    public void setRedelivered(boolean redelivered) {
+        this.redelivered = redelivered;
+    }
+
+    public int getRetryAttempt() {
+        return retryAttempt;
+    }
+
+    public void setRetryAttempt(int retryAttempt) {
+        this.retryAttempt = retryAttempt;
+    }
+
     public Integer getSkierID() {
         return skierID;
     }
@@ -50,5 +79,10 @@ public class LiftRide {
     public Integer getLiftID() {
         return liftID;
     }
+
+    // Vertical gained on a ride is derived from the lift (liftID * 10)
+    public int getVertical() {
+        return liftID * 10;
+    }
 }
 
@@ -0,0 +1,58 @@
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RotatingBloomFilterTest {
+    private static final long WINDOW_MS = 1000;
+
+    @Test
+    public void remembersIdsUntilTheirGenerationRotatesOut() {
+        AtomicLong clock = new AtomicLong(0);
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.01, 2, WINDOW_MS, clock::get);
+        filter.put(42);
+        assertTrue(filter.mightContain(42));
+
+        // First rotation: the ID is in the older generation, which is still checked
+        clock.set(WINDOW_MS / 2);
+        assertTrue(filter.mightContain(42));
+
+        // Second rotation clears the generation it was put in
+        clock.set(WINDOW_MS);
+        assertFalse(filter.mightContain(42));
+    }
+
+    @Test
+    public void idsPutAfterARotationSurviveTheNextOne() {
+        AtomicLong clock = new AtomicLong(0);
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.01, 2, WINDOW_MS, clock::get);
+        clock.set(WINDOW_MS / 2);
+        filter.put(7);
+        clock.set(WINDOW_MS);
+        assertTrue(filter.mightContain(7));
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTheConfiguredRate() {
+        int expectedIds = 10000;
+        RotatingBloomFilter filter = new RotatingBloomFilter(expectedIds, 0.01, 2, WINDOW_MS, () -> 0);
+        for (long id = 0; id < expectedIds; id++) {
+            filter.put(id);
+        }
+        for (long id = 0; id < expectedIds; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+
+        int probes = 100000;
+        int falsePositives = 0;
+        for (long id = expectedIds; id < expectedIds + probes; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        // Two generations are checked, only one of them filled: about 1%, with margin for variance
+        assertTrue("false positive rate " + falsePositives / (double) probes, falsePositives < probes * 0.02);
+    }
+}
@@ -0,0 +1,129 @@
+import model.LiftRide;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindSpoolTest {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversUncommittedBatchesFromTheCheckpoint() throws IOException {
+        String dir = folder.getRoot().getPath();
+        WriteBehindSpool spool = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        spool.append(batch(1));
+        spool.append(batch(2));
+        spool.append(batch(3));
+        assertEquals(1, spool.peek().get(0).getSkierID().intValue());
+        spool.commit();
+
+        WriteBehindSpool recovered = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        assertEquals(2, recovered.getDepth());
+        assertEquals(2, recovered.peek().get(0).getSkierID().intValue());
+        recovered.commit();
+        assertEquals(3, recovered.peek().get(0).getSkierID().intValue());
+    }
+
+    @Test
+    public void peekWithoutCommitReturnsTheSameBatchAgain() throws IOException {
+        WriteBehindSpool spool = new WriteBehindSpool(folder.getRoot().getPath(), SEGMENT_BYTES);
+        spool.append(batch(1));
+        spool.append(batch(2));
+        assertEquals(1, spool.peek().get(0).getSkierID().intValue());
+        assertEquals(1, spool.peek().get(0).getSkierID().intValue());
+        assertEquals(2, spool.getDepth());
+    }
+
+    @Test
+    public void recordFailingItsCrcEndsTheSegment() throws IOException {
+        String dir = folder.getRoot().getPath();
+        WriteBehindSpool spool = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        spool.append(batch(1));
+        spool.append(batch(2));
+
+        // Flip a payload byte of the second record, as a torn write would leave it
+        Path segment = onlySegment();
+        int firstPayloadBytes = readInt(segment, 0);
+        int secondRecord = 8 + firstPayloadBytes;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, secondRecord + 8);
+            b.put(0, (byte) (b.get(0) ^ 0xFF)).rewind();
+            channel.write(b, secondRecord + 8);
+        }
+
+        WriteBehindSpool recovered = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        assertEquals(1, recovered.getDepth());
+        assertEquals(1, recovered.peek().get(0).getSkierID().intValue());
+        recovered.commit();
+        assertNull(recovered.peek());
+    }
+
+    @Test
+    public void drainsInOrderAcrossSegments() throws IOException {
+        String dir = folder.getRoot().getPath();
+        WriteBehindSpool spool = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        int batches = 100; // several segments' worth
+        for (int i = 0; i < batches; i++) {
+            spool.append(batch(i));
+        }
+
+        WriteBehindSpool recovered = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        assertEquals(batches, recovered.getDepth());
+        for (int i = 0; i < batches; i++) {
+            assertEquals(i, recovered.peek().get(0).getSkierID().intValue());
+            recovered.commit();
+        }
+        assertNull(recovered.peek());
+        assertEquals(0, recovered.getDepth());
+    }
+
+    @Test
+    public void parkedBatchMovesToTheParkedFile() throws IOException {
+        String dir = folder.getRoot().getPath();
+        WriteBehindSpool spool = new WriteBehindSpool(dir, SEGMENT_BYTES);
+        spool.append(batch(1));
+        spool.append(batch(2));
+        spool.peek();
+        spool.park();
+
+        assertEquals(1, spool.getParkedCount());
+        assertEquals(2, spool.peek().get(0).getSkierID().intValue());
+        List<String> parked = Files.readAllLines(folder.getRoot().toPath().resolve("parked.ndjson"), StandardCharsets.UTF_8);
+        assertEquals(1, parked.size());
+        assertTrue(parked.get(0).contains("\"skierID\":1"));
+    }
+
+    private static List<LiftRide> batch(int skierID) {
+        return List.of(new LiftRide(skierID, 1, 2024, 1, 100, 5), new LiftRide(skierID, 1, 2024, 1, 110, 6));
+    }
+
+    private Path onlySegment() throws IOException {
+        try (var files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+    }
+
+    private static int readInt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            channel.read(b, position);
+            return b.getInt(0);
+        }
+    }
+}
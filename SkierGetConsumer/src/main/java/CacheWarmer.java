@@ -0,0 +1,161 @@
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-warms the GET response cache from a parallel segmented Scan of SkierTable before GETs are accepted.
+ *
+ * Every segment sums the scanned verticals per skier-day (this works for both storage modes). From those sums
+ * the same cache fields the GET handlers would store are built for API2 (day vertical), API1 (unique skiers
+ * per day) and, when every season and day was scanned, API3 (all seasons of a resort), and they are written to
+ * Redis in pipelined chunks. A field is only written if it was never invalidated, so a ride persisted during
+ * the scan cannot leave a stale warm value behind. The incrementally maintained agg:* aggregates are left alone:
+ * the POST consumer owns them.
+ */
+public class CacheWarmer {
+    private static final String TABLE_NAME = "SkierTable";
+    private static final int PIPELINE_CHUNK = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final JedisPool jedisPool;
+    private final int segments;
+    private final Set<String> seasons; // empty = every season
+    private final int minDayID;        // 0 = every day
+    private final int ttlSeconds;
+
+    // "SKIER#{skierID}|RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}" -> vertical of that skier-day
+    private final Map<String, Integer> skierDayVerticals = new ConcurrentHashMap<>();
+    private final AtomicLong scannedItems = new AtomicLong();
+
+    public CacheWarmer(DynamoDbClient dynamoDbClient, JedisPool jedisPool, int segments, Set<String> seasons,
+                       int minDayID, int ttlSeconds) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.jedisPool = jedisPool;
+        this.segments = segments;
+        this.seasons = seasons;
+        this.minDayID = minDayID;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public void warm() throws Exception {
+        long start = System.currentTimeMillis();
+        ExecutorService scanners = Executors.newFixedThreadPool(segments);
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for (int segment = 0; segment < segments; segment++) {
+                int s = segment;
+                scans.add(scanners.submit(() -> scanSegment(s)));
+            }
+            for (Future<?> scan : scans) {
+                scan.get();
+            }
+        } finally {
+            scanners.shutdown();
+        }
+
+        long keys = writeCache();
+        System.out.println("Cache warm-up scanned " + scannedItems.get() + " items into " + skierDayVerticals.size()
+                + " skier-days and stored " + keys + " cache entries in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void scanSegment(int segment) {
+        ScanRequest request = ScanRequest.builder()
+                .tableName(TABLE_NAME)
+                .segment(segment)
+                .totalSegments(segments)
+                .projectionExpression("PK, SK, vertical")
+                .build();
+
+        dynamoDbClient.scanPaginator(request).items().forEach(item -> {
+            scannedItems.incrementAndGet();
+            AttributeValue pk = item.get("PK");
+            AttributeValue sk = item.get("SK");
+            if (pk == null || sk == null || !sk.s().startsWith("RESORT#")) {
+                return;
+            }
+            // SK: RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}[#LIFT#{liftID}]
+            String[] parts = sk.s().split("#");
+            if (parts.length < 6 || !inWindow(parts[3], parts[5])) {
+                return;
+            }
+            AttributeValue vertical = item.get("vertical");
+            String dayField = RedisKeys.dayField(parts[1], parts[3], parts[5]);
+            skierDayVerticals.merge(pk.s() + "|" + dayField, vertical == null ? 0 : Integer.parseInt(vertical.n()), Integer::sum);
+        });
+    }
+
+    private boolean inWindow(String seasonID, String dayID) {
+        return (seasons.isEmpty() || seasons.contains(seasonID)) && (minDayID <= 0 || Integer.parseInt(dayID) >= minDayID);
+    }
+
+    // Builds the cache fields from the skier-day sums and writes them in pipelined chunks; returns the store count
+    private long writeCache() {
+        Map<String, Integer> skiersPerDay = new HashMap<>();
+        Map<String, Map<String, String>> resortVerticals = new HashMap<>(); // "{skierID}:{resortID}" -> season field -> vertical
+        long written = 0;
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Integer> entry : skierDayVerticals.entrySet()) {
+                String[] key = entry.getKey().split("\\|");
+                String skierID = key[0].substring("SKIER#".length());
+                String dayField = key[1];
+                String[] day = dayField.split("#");
+
+                store(pipeline, RedisKeys.dayVerticalCache(skierID, day[1], day[3]), day[5], String.valueOf(entry.getValue()));
+                written = syncIfFull(pipeline, written + 1);
+
+                skiersPerDay.merge(dayField, 1, Integer::sum);
+                resortVerticals.computeIfAbsent(skierID + ":" + day[1], k -> new HashMap<>())
+                        .merge(RedisKeys.resortSeasonField(day[1], day[3]), String.valueOf(entry.getValue()),
+                                (a, b) -> String.valueOf(Long.parseLong(a) + Long.parseLong(b)));
+            }
+
+            for (Map.Entry<String, Integer> entry : skiersPerDay.entrySet()) {
+                String[] day = entry.getKey().split("#");
+                store(pipeline, RedisKeys.uniqueSkiersCache(day[1], day[3]), day[5], String.valueOf(entry.getValue()));
+                written = syncIfFull(pipeline, written + 1);
+            }
+
+            // A resort is only complete in the API3 cache with every season and day, so it needs an unfiltered scan
+            if (minDayID <= 0 && seasons.isEmpty()) {
+                for (Map.Entry<String, Map<String, String>> entry : resortVerticals.entrySet()) {
+                    String[] skierResort = entry.getKey().split(":");
+                    String completeField = RedisKeys.resortCompleteField(skierResort[1]);
+                    Map<String, String> fields = entry.getValue();
+                    fields.put(completeField, "1");
+                    ResponseCache.store(pipeline, RedisKeys.resortVerticalCache(skierResort[0]), fields, ttlSeconds,
+                            List.of(completeField), ResponseCache.noVersions(1));
+                    written = syncIfFull(pipeline, written + 1);
+                }
+            }
+            pipeline.sync();
+        }
+        return written;
+    }
+
+    private void store(Pipeline pipeline, String key, String field, String value) {
+        ResponseCache.store(pipeline, key, Map.of(field, value), ttlSeconds, List.of(field), ResponseCache.noVersions(1));
+    }
+
+    private static long syncIfFull(Pipeline pipeline, long written) {
+        if (written % PIPELINE_CHUNK == 0) {
+            pipeline.sync();
+        }
+        return written;
+    }
+}
@@ -1,5 +1,7 @@
 import java.io.InputStream;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 public class Config {
     private static final Properties properties = new Properties();
@@ -39,4 +41,205 @@ public class Config {
     public static String getRedisPassword() {
         return properties.getProperty("redis.password");
     }
-}
\ No newline at end of file
+
+    public static boolean isRedisAggregatesEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("aggregates.redis.enabled", "false"));
+    }
+
+    public static StorageMode getStorageMode() {
+        return StorageMode.valueOf(properties.getProperty("dynamodb.storage.mode", StorageMode.ITEM_PER_RIDE.name()));
+    }
+
+    public static int getMetricsReportIntervalSeconds() {
+        return Integer.parseInt(properties.getProperty("metrics.report.interval.seconds", "10"));
+    }
+
+    public static int getPrefetchInitial() {
+        return Integer.parseInt(properties.getProperty("prefetch.initial", "50"));
+    }
+
+    public static int getPrefetchMin() {
+        return Integer.parseInt(properties.getProperty("prefetch.min", "1"));
+    }
+
+    public static int getPrefetchMax() {
+        return Integer.parseInt(properties.getProperty("prefetch.max", "200"));
+    }
+
+    public static double getPrefetchHeadroom() {
+        return Double.parseDouble(properties.getProperty("prefetch.headroom", "2.0"));
+    }
+
+    public static long getPrefetchAdjustIntervalMs() {
+        return Long.parseLong(properties.getProperty("prefetch.adjust.interval.ms", "2000"));
+    }
+
+    public static boolean isWarmupEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("warmup.enabled", "false"));
+    }
+
+    public static int getWarmupSegments() {
+        return Integer.parseInt(properties.getProperty("warmup.segments", "16"));
+    }
+
+    // Seasons to warm, e.g. "2024,2025"; empty warms every season
+    public static Set<String> getWarmupSeasons() {
+        Set<String> seasons = new HashSet<>();
+        for (String season : properties.getProperty("warmup.seasons", "").split(",")) {
+            if (!season.isBlank()) {
+                seasons.add(season.trim());
+            }
+        }
+        return seasons;
+    }
+
+    public static int getWarmupMinDayID() {
+        return Integer.parseInt(properties.getProperty("warmup.min.day", "0"));
+    }
+
+    // Deadline for the concurrent DynamoDB queries of one API3 request
+    public static long getQueryDeadlineMs() {
+        return Long.parseLong(properties.getProperty("api3.query.deadline.ms", "500"));
+    }
+
+    public static boolean isNearCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("nearcache.enabled", "true"));
+    }
+
+    public static int getNearCacheMaxEntries() {
+        return Integer.parseInt(properties.getProperty("nearcache.max.entries", "100000"));
+    }
+
+    public static long getNearCacheTtlMs() {
+        return Long.parseLong(properties.getProperty("nearcache.ttl.ms", "5000"));
+    }
+
+    // TTL of cached responses; long because the POST consumer deletes the ones a batch makes stale
+    public static int getCacheTtlSeconds() {
+        return Integer.parseInt(properties.getProperty("cache.ttl.seconds", "86400"));
+    }
+
+    // Lock lease held by the instance loading a missing response; others wait for its result meanwhile
+    public static long getCacheLeaseMs() {
+        return Long.parseLong(properties.getProperty("cache.lease.ms", "2000"));
+    }
+
+    // XFetch beta: > 1 refreshes hot keys earlier, < 1 later
+    public static double getCacheEarlyRefreshBeta() {
+        return Double.parseDouble(properties.getProperty("cache.early.refresh.beta", "1.0"));
+    }
+
+    public static int getCacheRefreshThreads() {
+        return Integer.parseInt(properties.getProperty("cache.refresh.threads", "4"));
+    }
+
+    // GET micro-batching: a batch closes at this many deliveries or this long after its first one
+    public static int getBatchMaxSize() {
+        return Integer.parseInt(properties.getProperty("batch.max.size", "100"));
+    }
+
+    public static long getBatchLingerMs() {
+        return Long.parseLong(properties.getProperty("batch.linger.ms", "2"));
+    }
+
+    public static int getBatchThreads() {
+        return Integer.parseInt(properties.getProperty("batch.threads", "4"));
+    }
+
+    // Threads answering cache misses from DynamoDB
+    public static int getLoadThreads() {
+        return Integer.parseInt(properties.getProperty("load.threads", "64"));
+    }
+
+    // Threads (each with its own channel) publishing GET replies
+    public static int getReplyPublisherThreads() {
+        return Integer.parseInt(properties.getProperty("reply.publisher.threads", "2"));
+    }
+
+    // One queue per GET type, each consumed with its own sizing (see LiftRideGetConsumer.Lane)
+    public static boolean isGetLanesEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("get.lanes.enabled", "false"));
+    }
+
+    // GETs hashed onto the instances by skierID (API1: resort-day), each instance consuming its own queues
+    public static boolean isGetAffinityEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("get.affinity.enabled", "false"));
+    }
+
+    // Per-lane settings are lane.<name>.<setting>; unset ones fall back to the shared setting
+    public static int getLaneConsumers(String lane, int fallback) {
+        return getLaneInt(lane, "consumers", fallback);
+    }
+
+    public static int getLanePrefetchInitial(String lane) {
+        return getLaneInt(lane, "prefetch.initial", getPrefetchInitial());
+    }
+
+    public static int getLanePrefetchMin(String lane) {
+        return getLaneInt(lane, "prefetch.min", getPrefetchMin());
+    }
+
+    public static int getLanePrefetchMax(String lane) {
+        return getLaneInt(lane, "prefetch.max", getPrefetchMax());
+    }
+
+    public static int getLaneBatchThreads(String lane) {
+        return getLaneInt(lane, "batch.threads", getBatchThreads());
+    }
+
+    public static int getLaneLoadThreads(String lane) {
+        return getLaneInt(lane, "load.threads", getLoadThreads());
+    }
+
+    private static int getLaneInt(String lane, String setting, int fallback) {
+        return Integer.parseInt(properties.getProperty("lane." + lane + "." + setting, String.valueOf(fallback)));
+    }
+
+    // In-memory copy of the POST consumer's skier bitmaps answering definite misses (needs the Redis aggregates)
+    public static boolean isNegativeFilterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("negative.filter.enabled", "false"));
+    }
+
+    public static long getNegativeFilterRefreshMs() {
+        return Long.parseLong(properties.getProperty("negative.filter.refresh.ms", "60000"));
+    }
+
+    // API2 / API3 misses read the skier's whole partition once and cache every derived field
+    public static boolean isTimelinePrefetchEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("timeline.prefetch.enabled", "false"));
+    }
+
+    // In-memory read model fed by the POST consumer's ride fanout (see ReadModelFeed)
+    public static boolean isReadModelEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("readmodel.enabled", "false"));
+    }
+
+    // Names this instance's queues and labels its metrics; must be unique per instance and stable across restarts
+    public static String getInstanceId() {
+        String instanceId = properties.getProperty("instance.id", "");
+        if (!instanceId.isEmpty()) {
+            return instanceId;
+        }
+        try {
+            return java.net.InetAddress.getLocalHost().getHostName();
+        } catch (java.net.UnknownHostException e) {
+            throw new IllegalStateException("Set instance.id, the host name is unknown", e);
+        }
+    }
+
+    public static int getReadModelRetainedSeasons() {
+        return Integer.parseInt(properties.getProperty("readmodel.retained.seasons", "2"));
+    }
+
+    public static String getReadModelSnapshotFile() {
+        return properties.getProperty("readmodel.snapshot.file", "readmodel/snapshot.bin");
+    }
+
+    public static long getReadModelSnapshotIntervalMs() {
+        return Long.parseLong(properties.getProperty("readmodel.snapshot.interval.ms", "30000"));
+    }
+
+    public static long getReadModelQueueExpiresMs() {
+        return Long.parseLong(properties.getProperty("readmodel.queue.expires.ms", "86400000"));
+    }
+}
@@ -1,41 +1,76 @@
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.rabbitmq.client.*;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LiftRideGetConsumer {
     private static final String GET_QUEUE_NAME = "skiersGetQueue";
+    private static final String GET_HASH_EXCHANGE_NAME = "skiersGetHashExchange"; // affinity routing, see Lane
     private static final int RMQ_CHANNEL_POOL_SIZE = 100;
     private static final int NUM_CONSUMER_THREADS = 600;
-    private static final int BATCH_SIZE = 25;  // Number of messages per Redis batch
+    // Lane queues GET_QUEUE_NAME.<lane>: API2, API1 and API3
+    private static final List<String> LANE_NAMES = List.of("dayVertical", "uniqueSkiers", "resortVertical");
     private static final int MAX_RETRIES = 5;  // Retry attempts for Redis operations
-    private static final int REDIS_TTL = 1000;
+    private static final int REDIS_TTL = Config.getCacheTtlSeconds(); // long: the POST consumer deletes stale responses
 
     // DynamoDB constants
     private static final String TABLE_NAME = "SkierTable";
     private static final String PartitionKey = "PK";
     private static final String SortKey = "SK";
+    private static final int BATCH_GET_MAX_KEYS = 100; // BatchGetItem limit
+    private static final int BATCH_GET_MAX_ATTEMPTS = 5;
 
     // RabbitMQ constants
     private static final String GET_RESPONSE_QUEUE_NAME = "skiersGetResponseQueue";
     private static final String GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY = "GET_DAY_VERTICAL";
     private static final String GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY = "GET_RESORT_VERTICAL";
     private static final String GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY = "GET_NUM_UNIQUE_SKIERS";
+    private static final Type REQUEST_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
 
     // Connections
     private Connection connection;
     private RMQChannelPool channelPool;
     private JedisPool jedisPool; // Redis connection pool
     private DynamoDbClient dynamoDbClient;
+    private DynamoDbAsyncClient dynamoDbAsyncClient; // scatter-gather queries of API3
+    private final long queryDeadlineMs = Config.getQueryDeadlineMs();
+    private NearCache nearCache; // L1 in front of Redis, null when disabled
+    private ResponseCache responseCache; // Redis response cache with stampede protection
+    private ReadModel readModel; // answers from memory what the ride fanout fed it, null when disabled
+    private final LongAdder readModelHits = new LongAdder();
+    private NegativeLookupFilter negativeFilter; // answers definite misses from memory, null when disabled
+    private TimelinePrefetcher timelinePrefetcher; // API2 / API3 misses read the whole skier partition, null when disabled
+    private final LongAdder aggregateHits = new LongAdder(); // answered from the agg:* aggregates
+    private final LongAdder localHits = new LongAdder(); // answered from process memory
+    private final LongAdder localLookups = new LongAdder();
+    private final List<Lane> lanes = new ArrayList<>(); // one per GET queue
+    private Connection replyConnection; // NIO connection of the reply publisher
+    private ReplyPublisher replyPublisher; // sends replies from its own channels
     private final Gson gson = new Gson();
+    private final boolean useRedisAggregates = Config.isRedisAggregatesEnabled();
+    private final StorageMode storageMode = Config.getStorageMode();
 
 
     public static void main(String[] args) {
@@ -54,6 +89,11 @@ public class LiftRideGetConsumer {
             factory.setPassword(Config.getRMQPassword());
             factory.setPort(Config.getRMQPort());
             connection = factory.newConnection();
+            // Replies go out on their own connection, so publishing does not contend with consumption; NIO lets
+            // consecutive replies share socket writes
+            ConnectionFactory replyFactory = factory.clone();
+            replyFactory.useNio();
+            replyConnection = replyFactory.newConnection();
 
             channelPool = new RMQChannelPool(RMQ_CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
             jedisPool = RedisConnectionManager.getJedisPool();
@@ -63,10 +103,112 @@ public class LiftRideGetConsumer {
             dynamoDbClient = DynamoDbClient.builder()
                     .region(region)
                     .build();
+            dynamoDbAsyncClient = DynamoDbAsyncClient.builder()
+                    .region(region)
+                    .build();
+
+            // Fill the response cache before the first GET arrives, so a cold Redis does not stampede DynamoDB
+            if (Config.isWarmupEnabled()) {
+                try {
+                    new CacheWarmer(dynamoDbClient, jedisPool, Config.getWarmupSegments(), Config.getWarmupSeasons(),
+                            Config.getWarmupMinDayID(), REDIS_TTL).warm();
+                } catch (Exception e) {
+                    System.err.println("Cache warm-up failed, starting cold: " + e.getMessage());
+                }
+            }
+
+            if (Config.isNearCacheEnabled()) {
+                nearCache = new NearCache(Config.getNearCacheMaxEntries(), Config.getNearCacheTtlMs());
+                nearCache.subscribe(connection);
+                MetricsReporter.register("cache.l1.hitRatio", nearCache::getHitRatioPercent);
+                MetricsReporter.register("cache.l1.size", nearCache::size);
+                MetricsReporter.register("cache.l1.invalidations", nearCache::getInvalidations);
+            }
+            // The read model answers first; what it does not hold (incomplete seasons) goes the usual way
+            if (Config.isReadModelEnabled() && useRedisAggregates) {
+                try {
+                    ReadModel model = new ReadModel(Config.getReadModelRetainedSeasons());
+                    new ReadModelFeed(model, Config.getInstanceId(), Path.of(Config.getReadModelSnapshotFile()),
+                            Config.getReadModelQueueExpiresMs()).start(connection, jedisPool, Config.getReadModelSnapshotIntervalMs());
+                    readModel = model;
+                    MetricsReporter.register("readmodel.hits", readModelHits::sum);
+                    MetricsReporter.register("readmodel.skierDays", readModel::getSkierDays);
+                } catch (Exception e) {
+                    System.err.println("Read model failed to start, running without it: " + e.getMessage());
+                }
+            }
+
+            // Requests for skiers without rides are answered before L1, so they neither reach Redis nor fill the caches
+            if (Config.isNegativeFilterEnabled() && useRedisAggregates) {
+                try {
+                    negativeFilter = new NegativeLookupFilter(jedisPool);
+                    negativeFilter.start(connection, Config.getNegativeFilterRefreshMs());
+                    MetricsReporter.register("filter.definiteMisses", negativeFilter::getDefiniteMisses);
+                    MetricsReporter.register("filter.days", negativeFilter::getLoadedDays);
+                } catch (Exception e) {
+                    System.err.println("Negative lookup filter failed to load, running without it: " + e.getMessage());
+                    negativeFilter = null;
+                }
+            }
+
+            if (Config.isTimelinePrefetchEnabled()) {
+                timelinePrefetcher = new TimelinePrefetcher(dynamoDbAsyncClient, jedisPool, TABLE_NAME, REDIS_TTL);
+                MetricsReporter.register("timeline.loads", timelinePrefetcher::getLoads);
+                MetricsReporter.register("timeline.sharedLoads", timelinePrefetcher::getSharedLoads);
+                MetricsReporter.register("timeline.prefetchedFields", timelinePrefetcher::getPrefetchedFields);
+            }
+
+            responseCache = new ResponseCache(jedisPool, REDIS_TTL, Config.getCacheLeaseMs(), Config.getCacheEarlyRefreshBeta(),
+                    Config.getCacheRefreshThreads());
+            // L2 = Redis (aggregates or cached response, also when another load was shared), misses = DynamoDB loads
+            MetricsReporter.register("cache.l2.hitRatio", () -> {
+                long hits = aggregateHits.sum() + responseCache.getHits() + responseCache.getSuppressedLoads();
+                long total = hits + responseCache.getLoads();
+                return total == 0 ? 0 : hits * 100 / total;
+            });
+            MetricsReporter.register("cache.l2.suppressedLoads", responseCache::getSuppressedLoads);
+            MetricsReporter.register("cache.l2.earlyRefreshes", responseCache::getEarlyRefreshes);
+
+            replyPublisher = new ReplyPublisher(replyConnection);
+            replyPublisher.start(Config.getReplyPublisherThreads());
+            MetricsReporter.register("reply.latencyMicros", replyPublisher::getAverageLatencyMicros);
+            MetricsReporter.register("reply.queued", replyPublisher::getQueued);
+            MetricsReporter.register("reply.failed", replyPublisher::getFailed);
+
+            // Share of requests answered by the read model, definite misses and L1: what affinity routing improves
+            MetricsReporter.register("cache.local.hitRatio", () -> {
+                long lookups = localLookups.sum();
+                return lookups == 0 ? 0 : localHits.sum() * 100 / lookups;
+            });
+
+            // Each GET type on its own lane, or all of them on the shared queue; with affinity every lane
+            // consumes this instance's queue on the lane's hash exchange instead
+            String instanceId = Config.getInstanceId();
+            boolean affinity = Config.isGetAffinityEnabled();
+            if (Config.isGetLanesEnabled()) {
+                for (String name : LANE_NAMES) {
+                    Lane lane = affinity
+                            ? new Lane(name, GET_QUEUE_NAME + "." + name + "." + instanceId, GET_HASH_EXCHANGE_NAME + "." + name)
+                            : new Lane(name, GET_QUEUE_NAME + "." + name, null);
+                    lane.start(true);
+                    lanes.add(lane);
+                }
+            } else {
+                Lane shared = affinity
+                        ? new Lane("shared", GET_QUEUE_NAME + "." + instanceId, GET_HASH_EXCHANGE_NAME)
+                        : new Lane("shared", GET_QUEUE_NAME, null);
+                shared.start(false);
+                lanes.add(shared);
+            }
+            MetricsReporter.setInstance(instanceId);
+            MetricsReporter.start(Config.getMetricsReportIntervalSeconds());
 
             // Start consumer threads
-            for (int i = 0; i < NUM_CONSUMER_THREADS; i++) {
-                executor.submit(this::consumeMessages);
+            int defaultConsumers = lanes.size() == 1 ? NUM_CONSUMER_THREADS : RMQ_CHANNEL_POOL_SIZE / lanes.size();
+            for (Lane lane : lanes) {
+                for (int i = 0; i < Config.getLaneConsumers(lane.name, defaultConsumers); i++) {
+                    executor.submit(() -> consumeMessages(lane));
+                }
             }
 
 
@@ -75,34 +217,19 @@ public class LiftRideGetConsumer {
         }
     }
 
-    private void consumeMessages() {
+    private void consumeMessages(Lane lane) {
         try {
             Channel channel = channelPool.borrowObject();
-            channel.basicConsume(GET_QUEUE_NAME, true, (consumerTag, delivery) -> {
+            PrefetchController.ChannelStats prefetch = lane.prefetchController.register();
+            prefetch.apply(channel);
+
+            // Manual acks, so the prefetch window bounds the requests held by this channel; the batch workers
+            // reply and ack, and record the time from delivery to ack as the service time
+            channel.basicConsume(lane.queue, false, (consumerTag, delivery) -> {
+                prefetch.arrived();
                 String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-                Map<String, Object> request = gson.fromJson(message, Map.class);
-                String response = processGetRequest(request);
-
-                String correlationId = delivery.getProperties().getCorrelationId();
-                String replyTo = delivery.getProperties().getReplyTo();  // Dynamic reply queue
-
-                // Ensure we have a valid replyTo queue
-                if (replyTo != null && !replyTo.isEmpty()) {
-                    try {
-                        channel.basicPublish(
-                                "",
-                                replyTo,
-                                new AMQP.BasicProperties.Builder()
-                                        .correlationId(correlationId)
-                                        .build(),
-                                response.getBytes(StandardCharsets.UTF_8)
-                        );
-                    } catch (Exception e) {
-                        System.err.println("Error sending response to dynamic reply queue: " + e.getMessage());
-                    }
-                } else {
-                    System.err.println("No replyTo queue specified. Unable to send response.");
-                }
+                Map<String, Object> request = gson.fromJson(message, REQUEST_TYPE);
+                lane.batcher.submit(new PendingGet(lane, channel, prefetch, delivery, request));
             }, consumerTag -> {
                 System.out.println("Consumer " + consumerTag + " canceled");
             });
@@ -112,227 +239,933 @@ public class LiftRideGetConsumer {
         }
     }
 
-    private String processGetRequest(Map<String, Object> request) {
+    // Answers a batch of GETs; a request it fails to answer gets a 500, so none keeps its prefetch slot unacked
+    private void processBatch(Lane lane, List<PendingGet> batch) {
         try {
-            String type = (String) request.get("type");
-            if (GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY.equals(type)) {
-                return getDayVertical(request);
+            answerBatch(lane, batch);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            reply(batch, internalError());
+        }
+    }
+
+    // Identical requests once, all Redis reads in one pipeline, misses on the loader pool
+    private void answerBatch(Lane lane, List<PendingGet> batch) {
+        Map<String, RequestGroup> groups = new LinkedHashMap<>();
+        long batchedNanos = System.nanoTime();
+        for (PendingGet get : batch) {
+            get.batchedNanos = batchedNanos;
+            lane.recordWait(batchedNanos - get.receivedNanos);
+            String type = (String) get.request.get("type");
+            String tag = cacheTag(type, get.request);
+            // Requests without a cache tag are not grouped
+            String key = tag == null ? "#" + groups.size() : requestKey(type, get.request, tag);
+            groups.computeIfAbsent(key, k -> new RequestGroup(k, tag, type, get.request)).waiters.add(get);
+        }
+
+        // Read model, definite misses and L1: answered from process memory, without a Redis round trip
+        List<RequestGroup> planned = new ArrayList<>();
+        for (RequestGroup group : groups.values()) {
+            localLookups.increment();
+            String fromReadModel = readModel == null ? null : readModelAnswer(group.type, group.request);
+            if (fromReadModel != null) {
+                readModelHits.increment();
+                localHits.increment();
+                reply(group.waiters, fromReadModel);
+                continue;
+            }
+            String definiteMiss = negativeFilter == null ? null : definiteMiss(group.type, group.request);
+            if (definiteMiss != null) {
+                localHits.increment();
+                reply(group.waiters, definiteMiss);
+                continue;
             }
-            else if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
-                return getResortVertical(request);
+            if (nearCache != null && group.tag != null) {
+                String cachedResponse = nearCache.get(group.key);
+                if (cachedResponse != null) {
+                    localHits.increment();
+                    reply(group.waiters, cachedResponse);
+                    continue;
+                }
+                group.stamp = nearCache.stamp(group.tag);
             }
-            else if (GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY.equals(type)) {
-                return getNumUniqueSkiers(request);
+            planned.add(group);
+        }
+        if (planned.isEmpty()) {
+            return;
+        }
+
+        // L2: the aggregates and cache fields of every request in one round trip
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (RequestGroup group : planned) {
+                group.plan = plan(group.type, group.request, pipeline);
             }
+            pipeline.sync();
         } catch (Exception e) {
             e.printStackTrace();
-            return gson.toJson(Map.of(
-                    "response_code", 500,
-                    "message", "Internal error processing GET request"
-            ));
+            String error = internalError();
+            for (RequestGroup group : planned) {
+                reply(group.waiters, error);
+            }
+            return;
+        }
+
+        List<RequestGroup> dayVerticalLoads = new ArrayList<>();
+        for (RequestGroup group : planned) {
+            if (!group.plan.needsLoad()) {
+                complete(group, group.plan.respond());
+            } else if (group.plan instanceof DayVerticalPlan && storageMode == StorageMode.SKIER_DAY_COUNTER
+                    && timelinePrefetcher == null) {
+                dayVerticalLoads.add(group);
+            } else {
+                load(lane, List.of(group), () -> complete(group, group.plan.respond()));
+            }
+        }
+        if (!dayVerticalLoads.isEmpty()) {
+            load(lane, dayVerticalLoads, () -> batchLoadDayVerticals(dayVerticalLoads));
         }
-        return "{\"message\":\"Failed to process GET request\"}";
     }
 
-    // API 1: /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
-    private String getNumUniqueSkiers(Map<String, Object> request) {
-        String resortID = (String) request.get("resortID");
-        String seasonID = (String) request.get("seasonID");
-        String dayID = (String) request.get("dayID");
+    // Runs a load on the lane's loader pool; the groups it leaves unanswered get a 500
+    private void load(Lane lane, List<RequestGroup> groups, Runnable load) {
+        lane.loaders.execute(() -> {
+            try {
+                load.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                String error = internalError();
+                for (RequestGroup group : groups) {
+                    reply(group.waiters, error);
+                }
+            }
+        });
+    }
 
-        String gsiPK = "RESORT#" + resortID + "#SEASON#" + seasonID + "#DAY#" + dayID;
-        String redisKey = "uniqueSkiers:" + gsiPK;
+    private String internalError() {
+        return gson.toJson(Map.of(
+                "response_code", 500,
+                "message", "Internal error processing GET request"
+        ));
+    }
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            String cachedResult = jedis.get(redisKey);
-            if (cachedResult != null) {
-                return cachedResult;
+    private void complete(RequestGroup group, String response) {
+        // Only complete answers are kept
+        if (nearCache != null && group.tag != null && ResponseCache.isComplete(response)) {
+            nearCache.put(group.key, group.tag, response, group.stamp);
+        }
+        reply(group.waiters, response);
+    }
+
+    // Replies through the reply publisher; each request is acked on the channel it arrived on once its reply is out.
+    // Requests already answered are skipped, so an error reply never doubles an ack.
+    private void reply(List<PendingGet> waiters, String response) {
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        for (PendingGet get : waiters) {
+            if (!get.answered.compareAndSet(false, true)) {
+                continue;
             }
+            // Ensure we have a valid replyTo queue
+            if (get.replyTo != null && !get.replyTo.isEmpty()) {
+                replyPublisher.send(get.replyTo, get.correlationId, body, () -> ack(get));
+            } else {
+                System.err.println("No replyTo queue specified. Unable to send response.");
+                ack(get);
+            }
+        }
+    }
 
-            QueryRequest queryRequest = QueryRequest.builder()
-                    .tableName(TABLE_NAME)
-                    .indexName("GSI_PK-index")
-                    .keyConditionExpression("GSI_PK = :gsiPK")
-                    .projectionExpression("PK")
-                    .expressionAttributeValues(Map.of(
-                            ":gsiPK", AttributeValue.builder().s(gsiPK).build()
-                    ))
-                    .build();
+    // The lock keeps the batch workers and reply publishers off each other's frames on the delivery channel
+    private void ack(PendingGet get) {
+        synchronized (get.channel) {
+            try {
+                get.channel.basicAck(get.deliveryTag, false);
+                long ackedNanos = System.nanoTime();
+                get.prefetch.record(ackedNanos - get.receivedNanos);
+                get.lane.recordService(ackedNanos - get.batchedNanos);
+                get.prefetch.apply(get.channel);
+            } catch (Exception e) {
+                System.err.println("Error acking GET request: " + e.getMessage());
+            }
+        }
+    }
 
-            QueryResponse result = dynamoDbClient.query(queryRequest);
+    // Queues the Redis reads of one request on the batch pipeline
+    private GetPlan plan(String type, Map<String, Object> request, Pipeline pipeline) {
+        if (GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY.equals(type)) {
+            return new DayVerticalPlan(request, pipeline);
+        }
+        else if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
+            List<String> resorts = stringList(request, "resorts");
+            if (resorts == null || resorts.isEmpty()) {
+                return new FixedPlan(gson.toJson(Map.of(
+                        "message", "Missing resort parameter",
+                        "response_code", 400
+                )));
+            }
+            return new ResortVerticalPlan(request, pipeline);
+        }
+        else if (GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY.equals(type)) {
+            return new UniqueSkiersPlan(request, pipeline);
+        }
+        return new FixedPlan("{\"message\":\"Failed to process GET request\"}");
+    }
 
-            // Use a HashSet for distinct PK counting
-            Set<String> uniqueSkiers = new HashSet<>();
-            for (Map<String, AttributeValue> item : result.items()) {
-                AttributeValue pkAttr = item.get("PK");
-                if (pkAttr != null && pkAttr.s() != null) {
-                    uniqueSkiers.add(pkAttr.s());
+    // The answer from the read model, or null when it does not hold the data
+    private String readModelAnswer(String type, Map<String, Object> request) {
+        if (GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY.equals(type)) {
+            Integer totalVertical = readModel.dayVertical((String) request.get("skierID"), (String) request.get("resortID"),
+                    (String) request.get("seasonID"), (String) request.get("dayID"));
+            return totalVertical == null ? null : formatDayVertical(totalVertical);
+        }
+        else if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
+            List<String> resorts = stringList(request, "resorts");
+            List<String> seasons = stringList(request, "seasons");
+            if (resorts == null || resorts.isEmpty()) {
+                return null;
+            }
+            List<Map<String, Object>> seasonResults = new ArrayList<>();
+            for (String resortID : resorts) {
+                Map<String, String> fields = readModel.seasonVerticalFields((String) request.get("skierID"), resortID, seasons);
+                if (fields == null) {
+                    return null;
                 }
+                addSeasonResults(seasonResults, resortID, cachedSeasonVerticals(fields, resortID, seasons), resorts.size() > 1);
             }
+            return gson.toJson(Map.of(
+                    "resorts", seasonResults,
+                    "response_code", 200
+            ));
+        }
+        else if (GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY.equals(type)) {
+            String resortID = (String) request.get("resortID");
+            Integer numSkiers = readModel.uniqueSkiers(resortID, (String) request.get("seasonID"), (String) request.get("dayID"));
+            return numSkiers == null ? null : formatUniqueSkiers(resortID, numSkiers);
+        }
+        return null;
+    }
 
-            long numUniqueSkiers = uniqueSkiers.size();
-
-            String responseJson = gson.toJson(Map.of(
-                    "resort", resortID,
-                    "numSkiers", numUniqueSkiers,
+    // The answer to a request the negative lookup filter knows has no data, or null when it may have some
+    private String definiteMiss(String type, Map<String, Object> request) {
+        if (GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY.equals(type)) {
+            return negativeFilter.mayHaveRides((String) request.get("skierID"), (String) request.get("resortID"),
+                    (String) request.get("seasonID"), (String) request.get("dayID")) ? null : formatDayVertical(-1);
+        }
+        else if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
+            List<String> resorts = stringList(request, "resorts");
+            if (resorts == null || resorts.isEmpty()) {
+                return null;
+            }
+            for (String resortID : resorts) {
+                if (negativeFilter.mayHaveRidesAtResort((String) request.get("skierID"), resortID,
+                        stringList(request, "seasons"))) {
+                    return null;
+                }
+            }
+            return gson.toJson(Map.of(
+                    "resorts", List.of(),
                     "response_code", 200
             ));
+        }
+        else if (GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY.equals(type)) {
+            String resortID = (String) request.get("resortID");
+            return negativeFilter.mayHaveSkiers(resortID, (String) request.get("seasonID"), (String) request.get("dayID"))
+                    ? null : formatUniqueSkiers(resortID, 0);
+        }
+        return null;
+    }
+
+    // The Redis cache hash the request is answered from (its invalidation tag), or null when it is not cacheable
+    private static String cacheTag(String type, Map<String, Object> request) {
+        if (GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY.equals(type)) {
+            return RedisKeys.dayVerticalCache(request.get("skierID"), request.get("resortID"), request.get("seasonID"));
+        }
+        else if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
+            List<String> resorts = stringList(request, "resorts");
+            return resorts == null || resorts.isEmpty() ? null : RedisKeys.resortVerticalCache(request.get("skierID"));
+        }
+        else if (GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY.equals(type)) {
+            return RedisKeys.uniqueSkiersCache(request.get("resortID"), request.get("seasonID"));
+        }
+        return null;
+    }
+
+    // Identifies a distinct request under its tag: the batch grouping key and the near cache key
+    private static String requestKey(String type, Map<String, Object> request, String tag) {
+        if (GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY.equals(type)) {
+            List<String> seasons = stringList(request, "seasons");
+            return tag + "|" + String.join(",", stringList(request, "resorts"))
+                    + "|" + (seasons == null ? "" : String.join(",", seasons));
+        }
+        return tag + "|" + request.get("dayID");
+    }
 
-            jedis.setex(redisKey, 1000, responseJson);
+    // A list parameter of the request (a JSON array of strings), or null when it is absent
+    private static List<String> stringList(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<String> strings = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            strings.add((String) element);
+        }
+        return strings;
+    }
 
-            return responseJson;
+    // SKIER_DAY_COUNTER keeps one item per skier-day, so API2 misses are key reads: up to 100 per BatchGetItem
+    private void batchLoadDayVerticals(List<RequestGroup> groups) {
+        Map<String, Long> verticals = new HashMap<>();
+        try {
+            for (int from = 0; from < groups.size(); from += BATCH_GET_MAX_KEYS) {
+                List<Map<String, AttributeValue>> keys = new ArrayList<>();
+                for (RequestGroup group : groups.subList(from, Math.min(groups.size(), from + BATCH_GET_MAX_KEYS))) {
+                    keys.add(((DayVerticalPlan) group.plan).itemKey());
+                }
+                Map<String, KeysAndAttributes> requestItems = Map.of(TABLE_NAME, KeysAndAttributes.builder()
+                        .keys(keys)
+                        .projectionExpression(PartitionKey + ", " + SortKey + ", vertical")
+                        .build());
+                // Throttled keys come back as UnprocessedKeys and are retried with a short backoff
+                for (int attempt = 0; !requestItems.isEmpty(); attempt++) {
+                    if (attempt == BATCH_GET_MAX_ATTEMPTS) {
+                        throw new IllegalStateException("keys still unprocessed after " + attempt + " attempts");
+                    }
+                    if (attempt > 0) {
+                        Thread.sleep(Math.min(1000, 10L << attempt));
+                    }
+                    BatchGetItemResponse result = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                            .requestItems(requestItems)
+                            .build());
+                    for (Map<String, AttributeValue> item : result.responses().getOrDefault(TABLE_NAME, List.of())) {
+                        AttributeValue vertical = item.get("vertical");
+                        verticals.put(item.get(PartitionKey).s() + "|" + item.get(SortKey).s(),
+                                vertical == null ? 0 : Long.parseLong(vertical.n()));
+                    }
+                    requestItems = result.unprocessedKeys();
+                }
+            }
+        } catch (Exception e) {
+            // Fall back to one load per request
+            System.err.println("BatchGetItem of " + groups.size() + " skier-days failed: " + e.getMessage());
+            for (RequestGroup group : groups) {
+                complete(group, group.plan.respond());
+            }
+            return;
+        }
 
+        // Answers do not depend on Redis; caching them is best effort
+        List<Long> loaded = new ArrayList<>(groups.size());
+        for (RequestGroup group : groups) {
+            DayVerticalPlan plan = (DayVerticalPlan) group.plan;
+            loaded.add(verticals.getOrDefault(plan.pk + "|" + plan.skPrefix, -1L));
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < groups.size(); i++) {
+                ((DayVerticalPlan) groups.get(i).plan).storeLoaded(loaded.get(i), pipeline);
+            }
+            pipeline.sync();
         } catch (Exception e) {
-            e.printStackTrace();
-            return gson.toJson(Map.of(
-                    "response_code", 500,
-                    "message", "Error retrieving number of unique skiers"
-            ));
+            System.err.println("Failed to cache " + groups.size() + " day verticals: " + e.getMessage());
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            complete(groups.get(i), ((DayVerticalPlan) groups.get(i).plan).format(loaded.get(i)));
+        }
+    }
+
+    /**
+     * The Redis reads of one distinct GET request, queued on a batch pipeline by the constructor. needsLoad()
+     * and respond() may only be called once the pipeline synced; respond() never throws.
+     */
+    private abstract static class GetPlan {
+        // True when neither the aggregates nor the response cache hold the answer, so respond() reads DynamoDB
+        abstract boolean needsLoad();
+
+        abstract String respond();
+    }
+
+    // A request answered without any read, e.g. a validation error
+    private static class FixedPlan extends GetPlan {
+        private final String response;
+
+        FixedPlan(String response) {
+            this.response = response;
+        }
+
+        boolean needsLoad() {
+            return false;
+        }
+
+        String respond() {
+            return response;
         }
     }
 
+    // API 1: /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
+    private class UniqueSkiersPlan extends GetPlan {
+        private final String resortID;
+        private final String dayID;
+        private final String gsiPK;
+        private final List<String> dayField;
+        private final Response<Long> bitmapCount;
+        private final ResponseCache.Lookup lookup;
+
+        UniqueSkiersPlan(Map<String, Object> request, Pipeline pipeline) {
+            resortID = (String) request.get("resortID");
+            String seasonID = (String) request.get("seasonID");
+            dayID = (String) request.get("dayID");
+            gsiPK = "RESORT#" + resortID + "#SEASON#" + seasonID + "#DAY#" + dayID;
+            dayField = List.of(dayID);
+            // The skier bitmap maintained by the POST consumer gives an exact count with one BITCOUNT
+            bitmapCount = useRedisAggregates ? pipeline.bitcount(RedisKeys.uniqueSkiersBitmap(resortID, seasonID, dayID)) : null;
+            lookup = responseCache.lookup(pipeline, RedisKeys.uniqueSkiersCache(resortID, seasonID), dayField, dayField);
+        }
+
+        private boolean fromAggregates() {
+            return bitmapCount != null && bitmapCount.get() > 0;
+        }
 
+        boolean needsLoad() {
+            return !fromAggregates() && !lookup.isHit(dayField);
+        }
+
+        String respond() {
+            try {
+                if (fromAggregates()) {
+                    aggregateHits.increment();
+                    return format(bitmapCount.get());
+                }
+
+                Map<String, String> cached = responseCache.resolve(lookup, dayField, () -> {
+                    QueryRequest queryRequest = QueryRequest.builder()
+                            .tableName(TABLE_NAME)
+                            .indexName("GSI_PK-index")
+                            .keyConditionExpression("GSI_PK = :gsiPK")
+                            .projectionExpression("PK")
+                            .expressionAttributeValues(Map.of(
+                                    ":gsiPK", AttributeValue.builder().s(gsiPK).build()
+                            ))
+                            .build();
+
+                    // Every page of the GSI query, folded into a bitset of skierIDs
+                    return Map.of(dayID, String.valueOf(StreamingAggregator.countDistinctSkiers(dynamoDbClient, queryRequest)));
+                });
+                return format(Long.parseLong(cached.get(dayID)));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                return gson.toJson(Map.of(
+                        "response_code", 500,
+                        "message", "Error retrieving number of unique skiers"
+                ));
+            }
+        }
+
+        private String format(long numSkiers) {
+            return formatUniqueSkiers(resortID, numSkiers);
+        }
+    }
 
     // API2: GET/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}: get ski day vertical for a skier
-    private String getDayVertical(Map<String, Object> request) {
-        String pk = "SKIER#" + request.get("skierID");
-        String skPrefix = "RESORT#" + request.get("resortID") + "#SEASON#" + request.get("seasonID") + "#DAY#" + request.get("dayID");
-        String redisKey = "dayVertical:" + pk + ":" + skPrefix;
+    private class DayVerticalPlan extends GetPlan {
+        private final String skierID;
+        private final String resortID;
+        private final String seasonID;
+        private final String pk;
+        private final String skPrefix;
+        private final String dayID;
+        private final List<String> dayField;
+        private final Response<String> aggregatedVertical;
+        private final ResponseCache.Lookup lookup;
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            String cachedResult = jedis.get(redisKey);
-            if (cachedResult != null) {
-                return cachedResult;
+        DayVerticalPlan(Map<String, Object> request, Pipeline pipeline) {
+            skierID = (String) request.get("skierID");
+            resortID = (String) request.get("resortID");
+            seasonID = (String) request.get("seasonID");
+            pk = "SKIER#" + request.get("skierID");
+            skPrefix = "RESORT#" + request.get("resortID") + "#SEASON#" + request.get("seasonID") + "#DAY#" + request.get("dayID");
+            dayID = (String) request.get("dayID");
+            dayField = List.of(dayID);
+            // Aggregates maintained by the POST consumer answer with one HGET and no DynamoDB query
+            aggregatedVertical = useRedisAggregates ? pipeline.hget(RedisKeys.dayVerticalAggregate(request.get("skierID")), skPrefix) : null;
+            lookup = responseCache.lookup(pipeline,
+                    RedisKeys.dayVerticalCache(request.get("skierID"), request.get("resortID"), request.get("seasonID")), dayField, dayField);
+        }
+
+        private boolean fromAggregates() {
+            return aggregatedVertical != null && aggregatedVertical.get() != null;
+        }
+
+        boolean needsLoad() {
+            return !fromAggregates() && !lookup.isHit(dayField);
+        }
+
+        String respond() {
+            try {
+                if (fromAggregates()) {
+                    aggregateHits.increment();
+                    return format(Integer.parseInt(aggregatedVertical.get()));
+                }
+                // The no-data answer (-1) is cached as well, so unknown skier-days do not hit DynamoDB on every request
+                Map<String, String> cached = responseCache.resolve(lookup, dayField,
+                        () -> Map.of(dayID, String.valueOf(loadVertical())));
+                return format(Long.parseLong(cached.get(dayID)));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                return gson.toJson(Map.of(
+                        "total_vertical", -1,
+                        "response_code", 500,
+                        "message", "Error retrieving day vertical"
+                ));
             }
+        }
 
-            QueryResponse result = dynamoDbClient.query(QueryRequest.builder()
+        // Queues the store of a miss loaded by batchLoadDayVerticals on the caller's pipeline
+        void storeLoaded(long totalVertical, Pipeline pipeline) {
+            responseCache.storeLoaded(pipeline, lookup, dayField, Map.of(dayID, String.valueOf(totalVertical)));
+        }
+
+        Map<String, AttributeValue> itemKey() {
+            return Map.of(
+                    PartitionKey, AttributeValue.builder().s(pk).build(),
+                    SortKey, AttributeValue.builder().s(skPrefix).build()
+            );
+        }
+
+        // Total vertical of the skier-day, -1 when it has no rides
+        private long loadVertical() throws Exception {
+            if (timelinePrefetcher != null) {
+                return timelinePrefetcher.load(skierID).get().dayVertical(resortID, seasonID, dayID);
+            }
+            if (storageMode == StorageMode.SKIER_DAY_COUNTER) {
+                // One aggregate item per skier-day: a single GetItem instead of summing every ride item
+                GetItemResponse result = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(TABLE_NAME)
+                        .key(itemKey())
+                        .projectionExpression("vertical")
+                        .build());
+                return result.hasItem()
+                        ? Long.parseLong(result.item().getOrDefault("vertical", AttributeValue.builder().n("0").build()).n()) : -1;
+            }
+            // The ride items of the day: the closing # keeps DAY#1 from matching DAY#10..DAY#19
+            return StreamingAggregator.sumVerticals(dynamoDbClient, QueryRequest.builder()
                     .tableName(TABLE_NAME)
                     .keyConditionExpression(PartitionKey + " = :pk AND begins_with(" + SortKey + ", :skPrefix)")
+                    .projectionExpression("vertical")
                     .expressionAttributeValues(Map.of(
                             ":pk", AttributeValue.builder().s(pk).build(),
-                            ":skPrefix", AttributeValue.builder().s(skPrefix).build()
+                            ":skPrefix", AttributeValue.builder().s(skPrefix + "#").build()
                     ))
                     .build());
+        }
 
-            if (result.items().isEmpty()) {
-                String responseJson = gson.toJson(Map.of(
-                        "total_vertical", -1,
-                        "response_code", 200,
-                        "message", "No data found"
-                ));
-                jedis.setex(redisKey, REDIS_TTL, responseJson); // Cache no-data response
-                return responseJson;
-            }
+        private String format(long totalVertical) {
+            return formatDayVertical(totalVertical);
+        }
+    }
 
-            int totalVertical = result.items().stream()
-                    .mapToInt(item -> Integer.parseInt(item.getOrDefault("vertical", AttributeValue.builder().n("0").build()).n()))
-                    .sum();
+    // API3: /skiers/{skierID}/vertical?resort=..[&resort=..][&season=..]
+    private class ResortVerticalPlan extends GetPlan {
+        private final String skierID;
+        private final String pk;
+        private final List<String> resorts;
+        private final List<String> seasons;
+        private final boolean multiResort;
+        // Per resort: HGETALL of every season without a season filter, HMGET of the requested ones with it
+        private final Map<String, Response<Map<String, String>>> aggregatedSeasons = new LinkedHashMap<>();
+        private final Map<String, Response<List<String>>> aggregatedRequestedSeasons = new LinkedHashMap<>();
+        private final ResponseCache.Lookup lookup;
 
-            String responseJson = gson.toJson(Map.of(
-                    "response_code", 200,
-                    "total_vertical", totalVertical
-            ));
+        ResortVerticalPlan(Map<String, Object> request, Pipeline pipeline) {
+            skierID = (String) request.get("skierID");
+            pk = "SKIER#" + skierID;
+            resorts = stringList(request, "resorts");
+            seasons = stringList(request, "seasons");
+            multiResort = resorts.size() > 1;
 
-            jedis.setex(redisKey, REDIS_TTL, responseJson);
+            // Per-season verticals aggregated by the POST consumer, per resort
+            if (useRedisAggregates) {
+                for (String resortID : resorts) {
+                    String aggregateKey = RedisKeys.seasonVerticalAggregate(skierID, resortID);
+                    if (hasSeasons()) {
+                        aggregatedRequestedSeasons.put(resortID, pipeline.hmget(aggregateKey, seasons.toArray(new String[0])));
+                    } else {
+                        aggregatedSeasons.put(resortID, pipeline.hgetAll(aggregateKey));
+                    }
+                }
+            }
 
-            return responseJson;
+            // A resort is cached with all of its seasons, so any season subset is one HMGET (HGETALL without a filter).
+            // Every resort is read, as which of them the aggregates answer is only known once the pipeline synced.
+            List<String> completeFields = completeFields(resorts);
+            List<String> fields = null;
+            if (hasSeasons()) {
+                fields = new ArrayList<>(completeFields);
+                for (String resortID : resorts) {
+                    for (String season : seasons) {
+                        fields.add(RedisKeys.resortSeasonField(resortID, season));
+                    }
+                }
+            }
+            lookup = responseCache.lookup(pipeline, RedisKeys.resortVerticalCache(skierID), fields, completeFields);
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return gson.toJson(Map.of(
-                    "total_vertical", -1,
-                    "response_code", 500,
-                    "message", "Error retrieving day vertical"
-            ));
+        private boolean hasSeasons() {
+            return seasons != null && !seasons.isEmpty();
+        }
+
+        // Resorts the aggregates cannot answer; only these fan out to DynamoDB
+        private List<String> queriedResorts() {
+            List<String> queriedResorts = new ArrayList<>();
+            for (String resortID : resorts) {
+                if (aggregatedSeasonVerticals(resortID) == null) {
+                    queriedResorts.add(resortID);
+                }
+            }
+            return queriedResorts;
+        }
+
+        boolean needsLoad() {
+            List<String> queriedResorts = queriedResorts();
+            return !queriedResorts.isEmpty() && !lookup.isHit(completeFields(queriedResorts));
         }
-    }
 
+        String respond() {
+            try {
+                List<Map<String, Object>> seasonResults = new ArrayList<>();
+                List<String> queriedResorts = new ArrayList<>();
+                for (String resortID : resorts) {
+                    List<Map<String, Object>> aggregatedResults = aggregatedSeasonVerticals(resortID);
+                    if (aggregatedResults != null) {
+                        addSeasonResults(seasonResults, resortID, aggregatedResults, multiResort);
+                    } else {
+                        queriedResorts.add(resortID);
+                    }
+                }
+                if (queriedResorts.isEmpty()) {
+                    aggregateHits.increment();
+                    return gson.toJson(Map.of(
+                            "resorts", seasonResults,
+                            "response_code", 200
+                    ));
+                }
 
-    // API3: /skiers/{skierID}/vertical
-    private String getResortVertical(Map<String, Object> request) {
-        String skierID = (String) request.get("skierID");
-        String pk = "SKIER#" + skierID;
-        List<String> resorts = (List<String>) request.get("resorts");
-        List<String> seasons = (List<String>) request.get("seasons");
+                Map<String, String> cached = responseCache.resolve(lookup, completeFields(queriedResorts),
+                        () -> timelinePrefetcher != null ? loadSeasonVerticalsFromTimeline(skierID, queriedResorts)
+                                : loadSeasonVerticals(pk, queriedResorts));
 
-        String resortID = resorts.get(0);
-        String redisKey = "resortVertical:" + skierID + ":" + resortID + (seasons != null ? ":" + String.join(",", seasons) : "");
+                // Resorts whose query missed the deadline are left out and the answer is flagged partial
+                boolean partial = false;
+                for (String resortID : queriedResorts) {
+                    if (!cached.containsKey(RedisKeys.resortCompleteField(resortID))) {
+                        partial = true;
+                        continue;
+                    }
+                    addSeasonResults(seasonResults, resortID, cachedSeasonVerticals(cached, resortID, seasons), multiResort);
+                }
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            String cachedResult = jedis.get(redisKey);
-            if (cachedResult != null) {
-                return cachedResult;
+                if (partial) {
+                    return gson.toJson(Map.of(
+                            "resorts", seasonResults,
+                            "partial", true,
+                            "response_code", 200
+                    ));
+                }
+                return gson.toJson(Map.of(
+                        "resorts", seasonResults,
+                        "response_code", 200
+                ));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                return gson.toJson(Map.of(
+                        "message", "Error retrieving resort vertical",
+                        "response_code", 500
+                ));
             }
+        }
 
+        // The per-season verticals aggregated by the POST consumer; null if the skier has no aggregate for the resort yet
+        private List<Map<String, Object>> aggregatedSeasonVerticals(String resortID) {
+            if (!useRedisAggregates) {
+                return null;
+            }
             List<Map<String, Object>> seasonResults = new ArrayList<>();
-            if (seasons == null || seasons.isEmpty()) {
-                String skPrefix = "RESORT#" + resortID;
-
-                QueryResponse result = dynamoDbClient.query(QueryRequest.builder()
-                        .tableName(TABLE_NAME)
-                        .keyConditionExpression(PartitionKey + " = :pk AND begins_with(" + SortKey + ", :skPrefix)")
-                        .expressionAttributeValues(Map.of(
-                                ":pk", AttributeValue.builder().s(pk).build(),
-                                ":skPrefix", AttributeValue.builder().s(skPrefix).build()
-                        ))
-                        .build());
 
-                Map<String, Integer> seasonVerticals = new HashMap<>();
-                for (Map<String, AttributeValue> item : result.items()) {
-                    String sortKey = item.get(SortKey).s();
-                    String seasonID = sortKey.split("#")[3]; // Extract the seasonID from the sort key
-                    int vertical = Integer.parseInt(item.getOrDefault("vertical", AttributeValue.builder().n("0").build()).n());
-                    seasonVerticals.put(seasonID, seasonVerticals.getOrDefault(seasonID, 0) + vertical);
+            if (!hasSeasons()) {
+                Map<String, String> seasonVerticals = aggregatedSeasons.get(resortID).get();
+                if (seasonVerticals.isEmpty()) {
+                    return null;
                 }
-
-                for (Map.Entry<String, Integer> entry : seasonVerticals.entrySet()) {
+                for (Map.Entry<String, String> entry : seasonVerticals.entrySet()) {
                     seasonResults.add(Map.of(
                             "seasonID", entry.getKey(),
-                            "totalVert", entry.getValue()
+                            "totalVert", Integer.parseInt(entry.getValue())
                     ));
                 }
-            } else {
-                for (String season : seasons) {
-                    String skPrefix = "RESORT#" + resortID + "#SEASON#" + season;
+                return seasonResults;
+            }
 
-                    QueryResponse result = dynamoDbClient.query(QueryRequest.builder()
-                            .tableName(TABLE_NAME)
-                            .keyConditionExpression(PartitionKey + " = :pk AND begins_with(" + SortKey + ", :skPrefix)")
-                            .expressionAttributeValues(Map.of(
-                                    ":pk", AttributeValue.builder().s(pk).build(),
-                                    ":skPrefix", AttributeValue.builder().s(skPrefix).build()
-                            ))
-                            .build());
+            List<String> seasonVerticals = aggregatedRequestedSeasons.get(resortID).get();
+            boolean found = false;
+            for (int i = 0; i < seasons.size(); i++) {
+                String vertical = seasonVerticals.get(i);
+                found |= vertical != null;
+                seasonResults.add(Map.of(
+                        "seasonID", seasons.get(i),
+                        "totalVert", vertical != null ? Integer.parseInt(vertical) : 0
+                ));
+            }
+            return found ? seasonResults : null;
+        }
+    }
 
-                    int totalVertical = result.items().stream()
-                            .mapToInt(item -> Integer.parseInt(item.getOrDefault("vertical", AttributeValue.builder().n("0").build()).n()))
-                            .sum();
+    private static List<String> completeFields(List<String> resorts) {
+        List<String> completeFields = new ArrayList<>(resorts.size());
+        for (String resortID : resorts) {
+            completeFields.add(RedisKeys.resortCompleteField(resortID));
+        }
+        return completeFields;
+    }
 
-                    seasonResults.add(Map.of(
-                            "seasonID", season,
-                            "totalVert", totalVertical
-                    ));
-                }
+    // All pages of one resort / season prefix, summed per season as they stream in
+    private CompletableFuture<StreamingAggregator.SeasonTotals> queryAsync(String pk, String skPrefix) {
+        return StreamingAggregator.sumVerticalsBySeason(dynamoDbAsyncClient, QueryRequest.builder()
+                .tableName(TABLE_NAME)
+                .keyConditionExpression(PartitionKey + " = :pk AND begins_with(" + SortKey + ", :skPrefix)")
+                .projectionExpression(SortKey + ", vertical")
+                .expressionAttributeValues(Map.of(
+                        ":pk", AttributeValue.builder().s(pk).build(),
+                        ":skPrefix", AttributeValue.builder().s(skPrefix).build()
+                ))
+                .build());
+    }
+
+    // All seasons of every resort, one concurrent query per resort; only resorts that finished before the deadline are returned
+    private Map<String, String> loadSeasonVerticals(String pk, List<String> resorts) throws InterruptedException {
+        Map<String, CompletableFuture<StreamingAggregator.SeasonTotals>> pendingQueries = new LinkedHashMap<>();
+        for (String resortID : resorts) {
+            pendingQueries.put(resortID, queryAsync(pk, "RESORT#" + resortID + "#")); // not RESORT#10.. for resort 1
+        }
+
+        // Wait for all of them, but no longer than the deadline, so latency tracks the slowest single query
+        try {
+            CompletableFuture.allOf(pendingQueries.values().toArray(new CompletableFuture<?>[0])).get(queryDeadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // merge whatever completed below
+        }
+
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<StreamingAggregator.SeasonTotals>> query : pendingQueries.entrySet()) {
+            if (!query.getValue().isDone() || query.getValue().isCompletedExceptionally()) {
+                query.getValue().cancel(true);
+                continue;
             }
+            StreamingAggregator.SeasonTotals totals = query.getValue().join();
+            for (int i = 0; i < totals.size(); i++) {
+                fields.put(RedisKeys.resortSeasonField(query.getKey(), totals.seasonAt(i)), String.valueOf(totals.totalAt(i)));
+            }
+            fields.put(RedisKeys.resortCompleteField(query.getKey()), "1");
+        }
+        return fields;
+    }
 
-            String responseJson = gson.toJson(Map.of(
-                    "resorts", seasonResults,
-                    "response_code", 200
+    // All seasons of every resort from the skier's timeline; past the deadline nothing is returned (a partial answer),
+    // while the load goes on and caches the timeline for the next request
+    private Map<String, String> loadSeasonVerticalsFromTimeline(String skierID, List<String> resorts) throws Exception {
+        try {
+            return TimelinePrefetcher.seasonFields(timelinePrefetcher.load(skierID).get(queryDeadlineMs, TimeUnit.MILLISECONDS), resorts);
+        } catch (TimeoutException e) {
+            return Map.of();
+        }
+    }
+
+    // The {seasonID, totalVert} entries of one cached resort: the requested seasons (0 when absent) or all in season order
+    private static List<Map<String, Object>> cachedSeasonVerticals(Map<String, String> cached, String resortID, List<String> seasons) {
+        List<Map<String, Object>> resortResults = new ArrayList<>();
+        if (seasons != null && !seasons.isEmpty()) {
+            for (String season : seasons) {
+                String vertical = cached.get(RedisKeys.resortSeasonField(resortID, season));
+                resortResults.add(Map.of(
+                        "seasonID", season,
+                        "totalVert", vertical == null ? 0L : Long.parseLong(vertical)
+                ));
+            }
+            return resortResults;
+        }
+
+        String prefix = RedisKeys.resortSeasonField(resortID, "");
+        String completeField = RedisKeys.resortCompleteField(resortID);
+        Map<String, Long> seasonVerticals = new TreeMap<>();
+        for (Map.Entry<String, String> field : cached.entrySet()) {
+            if (field.getKey().startsWith(prefix) && !field.getKey().equals(completeField)) {
+                seasonVerticals.put(field.getKey().substring(prefix.length()), Long.parseLong(field.getValue()));
+            }
+        }
+        for (Map.Entry<String, Long> season : seasonVerticals.entrySet()) {
+            resortResults.add(Map.of(
+                    "seasonID", season.getKey(),
+                    "totalVert", season.getValue()
             ));
+        }
+        return resortResults;
+    }
 
-            jedis.setex(redisKey, REDIS_TTL, responseJson);
-            return responseJson;
+    private String formatUniqueSkiers(String resortID, long numSkiers) {
+        return gson.toJson(Map.of(
+                "resort", resortID,
+                "numSkiers", numSkiers,
+                "response_code", 200
+        ));
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    private String formatDayVertical(long totalVertical) {
+        if (totalVertical < 0) {
             return gson.toJson(Map.of(
-                    "message", "Error retrieving resort vertical",
-                    "response_code", 500
+                    "total_vertical", -1,
+                    "response_code", 200,
+                    "message", "No data found"
             ));
         }
+        return gson.toJson(Map.of(
+                "response_code", 200,
+                "total_vertical", totalVertical
+        ));
     }
 
+    // Single-resort responses keep the original {seasonID, totalVert} entries; with several resorts each entry names its resort
+    private static void addSeasonResults(List<Map<String, Object>> seasonResults, String resortID,
+                                         List<Map<String, Object>> resortResults, boolean multiResort) {
+        for (Map<String, Object> result : resortResults) {
+            seasonResults.add(multiResort ? Map.of(
+                    "resortID", resortID,
+                    "seasonID", result.get("seasonID"),
+                    "totalVert", result.get("totalVert")
+            ) : result);
+        }
+    }
 
-}
+    // One GET queue with its own consumer channels, prefetch, batch workers and loader pool, so a slow type
+    // (API3 fans out to many DynamoDB queries) does not hold up the others and each lane can be sized on its own
+    private class Lane {
+        final String name;
+        final String queue;
+        final String exchange; // consistent-hash exchange the queue is bound to, null without affinity
+        final PrefetchController prefetchController;
+        final MicroBatcher<PendingGet> batcher;
+        final ExecutorService loaders; // DynamoDB loads of cache misses, off the batch workers
+        private Channel adminChannel; // declares the queue and reads its depth
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong waitCount = new AtomicLong();
+        private final AtomicLong serviceNanos = new AtomicLong();
+        private final AtomicLong serviceCount = new AtomicLong();
 
+        Lane(String name, String queue, String exchange) {
+            this.name = name;
+            this.queue = queue;
+            this.exchange = exchange;
+            prefetchController = new PrefetchController(Config.getLanePrefetchInitial(name),
+                    Config.getLanePrefetchMin(name), Config.getLanePrefetchMax(name), Config.getPrefetchHeadroom());
+            loaders = Executors.newFixedThreadPool(Config.getLaneLoadThreads(name));
+            batcher = new MicroBatcher<>(Config.getBatchMaxSize(), Config.getBatchLingerMs(),
+                    batch -> processBatch(this, batch));
+        }
 
+        void start(boolean declareQueue) throws IOException {
+            adminChannel = connection.createChannel();
+            if (exchange != null) {
+                // Exclusive: the broker drops the queue and its binding (weight 1) when this instance disconnects,
+                // so the ring always holds the live instances; a request stranded in it times out at the servlet
+                adminChannel.exchangeDeclare(exchange, "x-consistent-hash", true);
+                adminChannel.queueDeclare(queue, false, true, true, null);
+                adminChannel.queueBind(queue, exchange, "1");
+            } else if (declareQueue) {
+                adminChannel.queueDeclare(queue, true, false, false, null);
+            }
+            prefetchController.start(Config.getPrefetchAdjustIntervalMs());
+            batcher.start(Config.getLaneBatchThreads(name));
+
+            String prefix = "lane." + name + ".";
+            MetricsReporter.register(prefix + "depth", this::getDepth);
+            MetricsReporter.register(prefix + "waitMicros", () -> averageMicros(waitNanos, waitCount));
+            MetricsReporter.register(prefix + "serviceMicros", () -> averageMicros(serviceNanos, serviceCount));
+            MetricsReporter.register(prefix + "prefetch", prefetchController::getAverageApplied);
+            MetricsReporter.register(prefix + "arrivalRate", prefetchController::getArrivalRate);
+            MetricsReporter.register(prefix + "batchSize", batcher::getAverageBatchSize);
+            MetricsReporter.register(prefix + "batchQueued", batcher::getQueued);
+        }
+
+        // Time from delivery until a batch worker picks the request up
+        void recordWait(long nanos) {
+            waitNanos.addAndGet(nanos);
+            waitCount.incrementAndGet();
+        }
+
+        // Time from the start of its batch until the request is acked (reply published)
+        void recordService(long nanos) {
+            serviceNanos.addAndGet(nanos);
+            serviceCount.incrementAndGet();
+        }
+
+        // Messages ready in the broker queue, -1 when the broker could not be asked
+        long getDepth() {
+            try {
+                return adminChannel.messageCount(queue);
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+    }
+
+    // Mean since the previous call, in microseconds
+    private static long averageMicros(AtomicLong nanos, AtomicLong count) {
+        long n = count.getAndSet(0);
+        long total = nanos.getAndSet(0);
+        return n == 0 ? 0 : total / n / 1000;
+    }
+
+    // A delivery waiting in the micro-batcher for its reply and ack
+    private static class PendingGet {
+        final Lane lane;
+        final Channel channel;
+        final PrefetchController.ChannelStats prefetch;
+        final long deliveryTag;
+        final String correlationId;
+        final String replyTo;  // Dynamic reply queue
+        final Map<String, Object> request;
+        final long receivedNanos = System.nanoTime();
+        volatile long batchedNanos; // set by the batch worker, read by the reply publisher on ack
+        final AtomicBoolean answered = new AtomicBoolean();
+
+        PendingGet(Lane lane, Channel channel, PrefetchController.ChannelStats prefetch, Delivery delivery,
+                   Map<String, Object> request) {
+            this.lane = lane;
+            this.channel = channel;
+            this.prefetch = prefetch;
+            this.deliveryTag = delivery.getEnvelope().getDeliveryTag();
+            this.correlationId = delivery.getProperties().getCorrelationId();
+            this.replyTo = delivery.getProperties().getReplyTo();
+            this.request = request;
+        }
+    }
+
+    // The deliveries of one batch that ask the same thing, answered once
+    private static class RequestGroup {
+        final String key;
+        final String tag; // null when not cacheable
+        final String type;
+        final Map<String, Object> request;
+        final List<PendingGet> waiters = new ArrayList<>();
+        long stamp; // near cache stamp taken before the Redis reads
+        GetPlan plan;
+
+        RequestGroup(String key, String tag, String type, Map<String, Object> request) {
+            this.key = key;
+            this.tag = tag;
+            this.type = type;
+            this.request = request;
+        }
+    }
+}
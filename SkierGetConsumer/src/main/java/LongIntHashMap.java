@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> int hash map without boxing, for the read model's vertical totals. Not thread-safe:
+ * each instance must be guarded by its owner's lock.
+ */
+public class LongIntHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    // Adds delta to the value of key (0 if absent) and returns the new value
+    public int addTo(long key, int delta) {
+        int slot = findSlot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = delta;
+            if (++size > resizeAt) {
+                resize();
+            }
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    public int get(long key, int defaultValue) {
+        int slot = findSlot(keys, key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    // Calls the visitor for every entry; used to flush state without allocating an entry set
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    public interface EntryVisitor {
+        void visit(long key, int value);
+    }
+
+    private int findSlot(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = mix(key) & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
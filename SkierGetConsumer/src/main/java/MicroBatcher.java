@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Collects requests from all consumer channels into small time-bounded batches.
+ *
+ * A worker blocks for the first request, then keeps taking requests until the batch is full or the linger
+ * time since the first one has passed, and hands the batch to the handler. Under load batches fill before
+ * the linger ends, so it only adds latency when traffic is light. The queue is bounded by the channels'
+ * prefetch, since a delivery is only acked once its reply was sent.
+ */
+public class MicroBatcher<T> {
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Consumer<List<T>> handler;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+
+    public MicroBatcher(int maxBatchSize, long lingerMs, Consumer<List<T>> handler) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.handler = handler;
+    }
+
+    public void start(int workers) {
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::run, "micro-batcher-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public void submit(T request) {
+        queue.add(request);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : Math.round((double) batchedRequests.sum() / count);
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take what is already queued without waiting, then wait out the rest of the linger
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    T next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                batches.increment();
+                batchedRequests.add(batch.size());
+                handler.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Batch of " + batch.size() + " requests failed: " + e.getMessage());
+            } finally {
+                batch = new ArrayList<>(maxBatchSize); // the handler may still hold the previous batch
+            }
+        }
+    }
+}
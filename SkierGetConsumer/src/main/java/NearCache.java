@@ -0,0 +1,145 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-process (L1) cache of GET responses in front of Redis.
+ *
+ * Every entry is filed under an invalidation tag, the Redis cache hash its answer is read from (see RedisKeys).
+ * The POST consumer publishes the tags touched by each batch to INVALIDATION_EXCHANGE, a fanout exchange that
+ * every GET consumer instance binds its own queue to, and all entries under a tag are dropped on arrival. A TTL bounds staleness when an invalidation is lost, e.g. while the subscription is down.
+ *
+ * A response computed while its tag was invalidated is not stored: callers take a stamp() before reading L2
+ * and pass it to put(), which skips the entry if the tag's stripe was invalidated in between.
+ */
+public class NearCache {
+    public static final String INVALIDATION_EXCHANGE = "cacheInvalidationExchange";
+    private static final int STAMP_STRIPES = 1024;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> keysByTag = new ConcurrentHashMap<>();
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(STAMP_STRIPES);
+    private final Gson gson = new Gson();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public NearCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.createdNanos > ttlNanos) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public long stamp(String tag) {
+        return invalidationStamps.get(stripe(tag));
+    }
+
+    public void put(String key, String tag, String value, long stamp) {
+        if (invalidationStamps.get(stripe(tag)) != stamp) {
+            return; // the tag changed while the value was being read
+        }
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(key, new Entry(value, tag));
+        keysByTag.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key);
+        if (invalidationStamps.get(stripe(tag)) != stamp) {
+            entries.remove(key); // invalidated between the check and the insert
+        }
+    }
+
+    public void invalidate(String tag) {
+        invalidationStamps.incrementAndGet(stripe(tag));
+        Set<String> keys = keysByTag.remove(tag);
+        if (keys != null) {
+            for (String key : keys) {
+                entries.remove(key);
+            }
+            invalidations.increment();
+        }
+    }
+
+    // Binds an exclusive queue to the invalidation fanout exchange and applies every message (a JSON array of tags)
+    public void subscribe(Connection connection) throws Exception {
+        Channel channel = connection.createChannel();
+        channel.exchangeDeclare(INVALIDATION_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+        String queue = channel.queueDeclare().getQueue();
+        channel.queueBind(queue, INVALIDATION_EXCHANGE, "");
+        channel.basicConsume(queue, true, (consumerTag, delivery) -> {
+            String[] tags = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), String[].class);
+            for (String tag : tags) {
+                invalidate(tag);
+            }
+        }, consumerTag -> System.err.println("Near cache invalidation consumer canceled, relying on TTL"));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitRatioPercent() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : hits.sum() * 100 / total;
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    // Expired entries go first; if none, an arbitrary tenth of the cache is dropped (cheaper than tracking LRU order)
+    private void evict() {
+        long now = System.nanoTime();
+        int toRemove = Math.max(1, maxEntries / 10);
+        for (int pass = 0; pass < 2 && toRemove > 0; pass++) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext() && toRemove > 0) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (pass == 1 || now - entry.getValue().createdNanos > ttlNanos) {
+                    iterator.remove();
+                    keysByTag.computeIfPresent(entry.getValue().tag, (tag, keys) -> {
+                        keys.remove(entry.getKey());
+                        return keys.isEmpty() ? null : keys;
+                    });
+                    toRemove--;
+                }
+            }
+        }
+    }
+
+    private static int stripe(String tag) {
+        return (tag.hashCode() & 0x7fffffff) % STAMP_STRIPES;
+    }
+
+    private static class Entry {
+        final String value;
+        final String tag;
+        final long createdNanos = System.nanoTime();
+
+        Entry(String value, String tag) {
+            this.value = value;
+            this.tag = tag;
+        }
+    }
+}
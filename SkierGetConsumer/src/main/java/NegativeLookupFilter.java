@@ -0,0 +1,265 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory copy of the per resort-day skier bitmaps the POST consumer maintains in Redis, used to answer
+ * requests for skiers without rides (and days without skiers) without touching Redis or DynamoDB.
+ *
+ * The bitmaps are loaded at startup and reloaded every refresh interval. In between, the near cache invalidation
+ * tags (see CacheInvalidationPublisher in SkierConsumer) tell which skiers rode at which resort-season: they are
+ * added to the per resort-season and per resort sets right away, and marked pending for that resort-season, since
+ * the tags do not carry the day. A pending skier-season is never answered as a miss until the next reload, which
+ * reads the bitmaps after the POST consumer set them. So a miss is definite unless an invalidation was lost, in
+ * which case the reload bounds the error. Only meaningful when the bitmaps cover every ride (Redis aggregates on).
+ */
+public class NegativeLookupFilter {
+    private static final int SCAN_COUNT = 1000;
+
+    private final JedisPool jedisPool;
+    private final Gson gson = new Gson();
+
+    // Keyed by RedisKeys.dayField, RedisKeys.resortSeasonField and resortID; bit {skierID} set when the skier rode
+    private volatile Map<String, BitSet> skiersByDay = new ConcurrentHashMap<>();
+    private volatile Map<String, BitSet> skiersByResortSeason = new ConcurrentHashMap<>();
+    private volatile Map<String, BitSet> skiersByResort = new ConcurrentHashMap<>();
+    // Skiers that rode at a resort-season since the last reload, on days not known yet
+    private volatile Map<String, BitSet> pendingByResortSeason = new ConcurrentHashMap<>();
+    private volatile boolean ready; // nothing is a definite miss before the first load
+
+    private final LongAdder definiteMisses = new LongAdder();
+
+    public NegativeLookupFilter(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    // Subscribes to the invalidation tags, then loads the bitmaps and reloads them every refreshMs
+    public void start(Connection connection, long refreshMs) throws Exception {
+        Channel channel = connection.createChannel();
+        channel.exchangeDeclare(NearCache.INVALIDATION_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+        String queue = channel.queueDeclare().getQueue();
+        channel.queueBind(queue, NearCache.INVALIDATION_EXCHANGE, "");
+        channel.basicConsume(queue, true, (consumerTag, delivery) -> {
+            String[] tags = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), String[].class);
+            for (String tag : tags) {
+                onTag(tag);
+            }
+        }, consumerTag -> System.err.println("Negative lookup filter lost its invalidation consumer, relying on reloads"));
+
+        reload();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "negative-filter-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                System.err.println("Negative lookup filter reload failed: " + e.getMessage());
+            }
+        }, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    // API2: false only when the skier certainly has no rides that day
+    public boolean mayHaveRides(String skierID, String resortID, String seasonID, String dayID) {
+        int skier = skierBit(skierID);
+        if (!ready || skier < 0) {
+            return true;
+        }
+        String resortSeason = RedisKeys.resortSeasonField(resortID, seasonID);
+        return contains(skiersByDay.get(RedisKeys.dayField(resortID, seasonID, dayID)), skier)
+                || contains(pendingByResortSeason.get(resortSeason), skier)
+                || countDefiniteMiss();
+    }
+
+    // API1: false only when nobody rode at the resort that day
+    public boolean mayHaveSkiers(String resortID, String seasonID, String dayID) {
+        if (!ready) {
+            return true;
+        }
+        return !isEmpty(skiersByDay.get(RedisKeys.dayField(resortID, seasonID, dayID)))
+                || !isEmpty(pendingByResortSeason.get(RedisKeys.resortSeasonField(resortID, seasonID)))
+                || countDefiniteMiss();
+    }
+
+    // API3: false only when the skier certainly has no rides at the resort in any of the seasons (null = any season)
+    public boolean mayHaveRidesAtResort(String skierID, String resortID, List<String> seasons) {
+        int skier = skierBit(skierID);
+        if (!ready || skier < 0) {
+            return true;
+        }
+        if (seasons == null || seasons.isEmpty()) {
+            return contains(skiersByResort.get(resortID), skier) || countDefiniteMiss();
+        }
+        for (String seasonID : seasons) {
+            if (contains(skiersByResortSeason.get(RedisKeys.resortSeasonField(resortID, seasonID)), skier)) {
+                return true;
+            }
+        }
+        return countDefiniteMiss();
+    }
+
+    public long getDefiniteMisses() {
+        return definiteMisses.sum();
+    }
+
+    public int getLoadedDays() {
+        return skiersByDay.size();
+    }
+
+    // Reads every skier bitmap; tags received while reading are applied to the new sets before they are swapped in
+    private void reload() {
+        Map<String, BitSet> pendingBefore;
+        synchronized (this) {
+            pendingBefore = pendingByResortSeason;
+            pendingByResortSeason = new ConcurrentHashMap<>();
+        }
+
+        Map<String, BitSet> days = new ConcurrentHashMap<>();
+        Map<String, BitSet> resortSeasons = new ConcurrentHashMap<>();
+        Map<String, BitSet> resorts = new ConcurrentHashMap<>();
+        try (Jedis jedis = jedisPool.getResource()) {
+            ScanParams params = new ScanParams().match(RedisKeys.UNIQUE_SKIERS_BITMAP_PREFIX + "*").count(SCAN_COUNT);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> page = jedis.scan(cursor, params);
+                cursor = page.getCursor();
+
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<byte[]>> bitmaps = new ArrayList<>();
+                for (String key : page.getResult()) {
+                    bitmaps.add(pipeline.get(key.getBytes(StandardCharsets.UTF_8)));
+                }
+                pipeline.sync();
+
+                for (int i = 0; i < bitmaps.size(); i++) {
+                    // RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID}
+                    String dayField = page.getResult().get(i).substring(RedisKeys.UNIQUE_SKIERS_BITMAP_PREFIX.length());
+                    String[] parts = dayField.split("#");
+                    byte[] bitmap = bitmaps.get(i).get();
+                    if (parts.length != 6 || bitmap == null) {
+                        continue;
+                    }
+                    BitSet skiers = fromRedisBitmap(bitmap);
+                    days.put(dayField, skiers);
+                    resortSeasons.computeIfAbsent(RedisKeys.resortSeasonField(parts[1], parts[3]), k -> new BitSet()).or(skiers);
+                    resorts.computeIfAbsent(parts[1], k -> new BitSet()).or(skiers);
+                }
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        } catch (RuntimeException e) {
+            // Keep the previous sets, including what was pending before this attempt
+            synchronized (this) {
+                pendingBefore.forEach((resortSeason, skiers) -> or(pendingByResortSeason, resortSeason, skiers));
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, BitSet> pending : pendingByResortSeason.entrySet()) {
+                or(resortSeasons, pending.getKey(), pending.getValue());
+                or(resorts, pending.getKey().substring(0, pending.getKey().indexOf('#')), pending.getValue());
+            }
+            skiersByDay = days;
+            skiersByResortSeason = resortSeasons;
+            skiersByResort = resorts;
+            ready = true;
+        }
+    }
+
+    // dayVertical:SKIER#{skierID}:RESORT#{resortID}#SEASON#{seasonID} - a ride of the skier at that resort-season
+    private synchronized void onTag(String tag) {
+        if (!tag.startsWith(RedisKeys.DAY_VERTICAL_CACHE_PREFIX)) {
+            return;
+        }
+        String[] skierAndDay = tag.substring(RedisKeys.DAY_VERTICAL_CACHE_PREFIX.length()).split(":");
+        if (skierAndDay.length != 2) {
+            return;
+        }
+        int skier = skierBit(skierAndDay[0].substring(skierAndDay[0].indexOf('#') + 1));
+        String[] parts = skierAndDay[1].split("#");
+        if (skier < 0 || parts.length != 4) {
+            return;
+        }
+        String resortSeason = RedisKeys.resortSeasonField(parts[1], parts[3]);
+        BitSet skiers = new BitSet();
+        skiers.set(skier);
+        or(pendingByResortSeason, resortSeason, skiers);
+        or(skiersByResortSeason, resortSeason, skiers);
+        or(skiersByResort, parts[1], skiers);
+    }
+
+    private boolean countDefiniteMiss() {
+        definiteMisses.increment();
+        return false;
+    }
+
+    private static void or(Map<String, BitSet> sets, String key, BitSet bits) {
+        BitSet set = sets.computeIfAbsent(key, k -> new BitSet());
+        synchronized (set) {
+            set.or(bits);
+        }
+    }
+
+    private static boolean contains(BitSet set, int bit) {
+        if (set == null) {
+            return false;
+        }
+        synchronized (set) {
+            return set.get(bit);
+        }
+    }
+
+    private static boolean isEmpty(BitSet set) {
+        if (set == null) {
+            return true;
+        }
+        synchronized (set) {
+            return set.isEmpty();
+        }
+    }
+
+    // -1 when the skierID cannot be a bitmap offset, so the filter does not decide
+    private static int skierBit(String skierID) {
+        try {
+            int skier = Integer.parseInt(skierID);
+            return skier < 0 ? -1 : skier;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Redis numbers bits from the most significant bit of the first byte
+    private static BitSet fromRedisBitmap(byte[] bitmap) {
+        BitSet bits = new BitSet(bitmap.length * 8);
+        for (int i = 0; i < bitmap.length; i++) {
+            if (bitmap[i] == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < 8; bit++) {
+                if ((bitmap[i] & (0x80 >>> bit)) != 0) {
+                    bits.set(i * 8 + bit);
+                }
+            }
+        }
+        return bits;
+    }
+}
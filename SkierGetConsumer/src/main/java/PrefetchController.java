@@ -0,0 +1,144 @@
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts the basicQos prefetch of every consumer channel to its observed arrival rate and service time.
+ *
+ * By Little's law the number of messages a channel holds in flight is its arrival rate (lambda) times the time a
+ * message spends in flight (service time W + broker round trip), i.e. lambda * (W + RTT). Each interval the
+ * controller sets the channel's prefetch to that level times a headroom factor, within [min, max]: busy channels
+ * with fast service get a deep window to hide round trips, slow or quiet ones a shallow window so messages are
+ * not hoarded by one channel. Arrivals are capped by the prefetch itself, so a channel that is held back by its
+ * window grows it by the headroom factor each interval. The round trip is measured from the basic.qos / qos-ok
+ * exchange itself.
+ *
+ * The prefetch is per consumer, as quorum queues require and so that consumers sharing a channel keep their own
+ * limit. RabbitMQ fixes a consumer's prefetch when it starts, so a new target reaches the consumers that start on
+ * the channel afterwards (new workers, reassigned partitions, recovered channels), not the one already running.
+ *
+ * Keep in sync between SkierConsumer and SkierGetConsumer.
+ */
+public class PrefetchController {
+    private final int minPrefetch;
+    private final int maxPrefetch;
+    private final double headroom;
+    private final int initialPrefetch;
+    private final List<ChannelStats> channels = new CopyOnWriteArrayList<>();
+    private long lastAdjustNanos = System.nanoTime(); // adjusting thread only
+
+    public PrefetchController(int initialPrefetch, int minPrefetch, int maxPrefetch, double headroom) {
+        this.initialPrefetch = initialPrefetch;
+        this.minPrefetch = minPrefetch;
+        this.maxPrefetch = maxPrefetch;
+        this.headroom = headroom;
+    }
+
+    public ChannelStats register() {
+        ChannelStats stats = new ChannelStats(initialPrefetch);
+        channels.add(stats);
+        return stats;
+    }
+
+    // For a channel that is closed, so it no longer counts towards the gauges
+    public void unregister(ChannelStats stats) {
+        channels.remove(stats);
+    }
+
+    public void start(long intervalMs) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prefetch-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::adjust, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Recomputes every channel's target; the delivery thread applies it on its next message
+    private void adjust() {
+        long now = System.nanoTime();
+        double intervalNanos = now - lastAdjustNanos;
+        lastAdjustNanos = now;
+        for (ChannelStats stats : channels) {
+            long arrivals = stats.arrivals.getAndSet(0);
+            long deliveries = stats.deliveries.getAndSet(0);
+            long busyNanos = stats.busyNanos.getAndSet(0);
+            stats.arrivalsPerSecond = arrivals * 1e9 / intervalNanos;
+            if (arrivals == 0 || deliveries == 0 || busyNanos == 0) {
+                continue; // idle channel: no evidence to act on
+            }
+            double serviceNanos = (double) busyNanos / deliveries;
+            double inFlight = arrivals / intervalNanos * (serviceNanos + stats.rttNanos);
+            stats.target = (int) Math.max(minPrefetch, Math.min(maxPrefetch, Math.ceil(inFlight * headroom)));
+        }
+    }
+
+    public int getMinApplied() {
+        return channels.stream().mapToInt(stats -> stats.applied).min().orElse(0);
+    }
+
+    public int getMaxApplied() {
+        return channels.stream().mapToInt(stats -> stats.applied).max().orElse(0);
+    }
+
+    public long getAverageApplied() {
+        return Math.round(channels.stream().mapToInt(stats -> stats.applied).average().orElse(0));
+    }
+
+    // Messages delivered per second over all channels, as of the last interval
+    public long getArrivalRate() {
+        return Math.round(channels.stream().mapToDouble(stats -> stats.arrivalsPerSecond).sum());
+    }
+
+    // Mean broker round trip seen by basic.qos, in microseconds
+    public long getAverageRttMicros() {
+        return Math.round(channels.stream().mapToLong(stats -> stats.rttNanos).average().orElse(0) / 1000);
+    }
+
+    /**
+     * Per-channel counters. arrived() is called by the channel's delivery thread for every message. record() and
+     * apply() are called by whoever acks on the channel (its delivery thread, or a batch worker holding the
+     * channel's lock), so basic.qos never races with those acks.
+     */
+    public static class ChannelStats {
+        private final AtomicLong arrivals = new AtomicLong();
+        private final AtomicLong deliveries = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private volatile int target;
+        private volatile int applied;
+        private volatile long rttNanos;
+        private volatile double arrivalsPerSecond;
+
+        private ChannelStats(int initialPrefetch) {
+            this.target = initialPrefetch;
+        }
+
+        public void arrived() {
+            arrivals.incrementAndGet();
+        }
+
+        public void record(long serviceNanos) {
+            deliveries.incrementAndGet();
+            busyNanos.addAndGet(serviceNanos);
+        }
+
+        // Sets the per-consumer prefetch if the target changed (global QoS is unsupported on quorum queues and would
+        // be shared by every consumer on the channel). RabbitMQ applies it to consumers started on the channel after it.
+        public void apply(Channel channel) throws IOException {
+            int prefetch = target;
+            if (prefetch == applied) {
+                return;
+            }
+            long start = System.nanoTime();
+            channel.basicQos(prefetch);
+            rttNanos = System.nanoTime() - start;
+            applied = prefetch;
+        }
+    }
+}
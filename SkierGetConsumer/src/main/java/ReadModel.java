@@ -0,0 +1,388 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory read model of every ride in the retained seasons, fed by ReadModelFeed: day and season verticals
+ * per skier in primitive long -> int maps, and a skier bitset per resort-day. Answers all three GET APIs.
+ *
+ * Keys pack resortID (9 bits), seasonID (14 bits) and dayID (9 bits), with the skierID in the high 32 bits; rides or requests outside these ranges are left to the other paths. A season is
+ * complete unless it had rides before the model went live or was evicted to keep at most retainedSeasonCount
+ * seasons; requests for incomplete seasons return null, so the caller falls back to the caches and DynamoDB.
+ *
+ * One writer (the feed) and many readers share a read-write lock. Snapshots record the IDs of the batches the feed
+ * has not acked yet, so the batches the broker redelivers after a restart or reconnect are applied once.
+ */
+public class ReadModel {
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int EXPECTED_SKIER_DAYS = 1 << 16;
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private final int retainedSeasonCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private LongIntHashMap dayVerticals = new LongIntHashMap(EXPECTED_SKIER_DAYS); // skierDayKey -> vertical
+    private LongIntHashMap seasonVerticals = new LongIntHashMap(EXPECTED_SKIER_DAYS); // skierDayKey with day 0
+    private final Map<Integer, BitSet> skiersByDay = new HashMap<>(); // dayKey -> skierIDs
+    private final TreeSet<Integer> retainedSeasons = new TreeSet<>();
+    private final Set<Integer> incompleteSeasons = new HashSet<>();
+    private final Map<String, Long> unackedBatchIds = new HashMap<>(); // batchId -> delivery tag
+    private final Set<String> snapshotBatchIds = new HashSet<>(); // applied before the restored snapshot
+    private long lastDeliveryTag;
+
+    public ReadModel(int retainedSeasonCount) {
+        this.retainedSeasonCount = Math.max(1, retainedSeasonCount);
+    }
+
+    // Applies one fanout batch of [skierID, resortID, seasonID, dayID, vertical] rides, unless it was applied before
+    public void apply(String batchId, int[][] rides, long deliveryTag) {
+        lock.writeLock().lock();
+        try {
+            lastDeliveryTag = deliveryTag;
+            if (batchId != null) {
+                // A skipped redelivery is unacked again under its new tag, so the next snapshot keeps its ID
+                boolean applied = snapshotBatchIds.remove(batchId) || unackedBatchIds.containsKey(batchId);
+                unackedBatchIds.put(batchId, deliveryTag);
+                if (applied) {
+                    return;
+                }
+            }
+            for (int[] ride : rides) {
+                int skierID = ride[0], resortID = ride[1], seasonID = ride[2], dayID = ride[3];
+                if (!inRange(skierID, resortID, seasonID, dayID) || !retain(seasonID)) {
+                    continue;
+                }
+                dayVerticals.addTo(skierDayKey(skierID, resortID, seasonID, dayID), ride[4]);
+                seasonVerticals.addTo(skierDayKey(skierID, resortID, seasonID, 0), ride[4]);
+                skiersByDay.computeIfAbsent(dayKey(resortID, seasonID, dayID), k -> new BitSet()).set(skierID);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Seasons that had rides before the feed was bound
+    public void markIncomplete(Collection<Integer> seasons) {
+        lock.writeLock().lock();
+        try {
+            for (int seasonID : seasons) {
+                if (retainedSeasons.contains(seasonID)) {
+                    evict(seasonID);
+                }
+                incompleteSeasons.add(seasonID);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // API2: vertical of the skier-day (-1 without rides), null when the model cannot answer
+    public Integer dayVertical(String skierID, String resortID, String seasonID, String dayID) {
+        int skier = parse(skierID), resort = parse(resortID), season = parse(seasonID), day = parse(dayID);
+        if (!inRange(skier, resort, season, day)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (incompleteSeasons.contains(season)) {
+                return null;
+            }
+            int vertical = dayVerticals.get(skierDayKey(skier, resort, season, day), NO_VALUE);
+            return vertical == NO_VALUE ? -1 : vertical;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // API1: number of skiers of the resort-day, null when the model cannot answer
+    public Integer uniqueSkiers(String resortID, String seasonID, String dayID) {
+        int resort = parse(resortID), season = parse(seasonID), day = parse(dayID);
+        if (!inRange(0, resort, season, day)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (incompleteSeasons.contains(season)) {
+                return null;
+            }
+            BitSet skiers = skiersByDay.get(dayKey(resort, season, day));
+            return skiers == null ? 0 : skiers.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * API3: the resort's season verticals as response cache fields (see RedisKeys.resortSeasonField, with the
+     * complete marker), for the requested seasons or, without seasons, all of them. Null when the model cannot
+     * answer, which without seasons is whenever any season is incomplete.
+     */
+    public Map<String, String> seasonVerticalFields(String skierID, String resortID, List<String> seasons) {
+        int skier = parse(skierID), resort = parse(resortID);
+        if (!inRange(skier, resort, 0, 0)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            // Fields are named after the requested IDs, as the response is built from them
+            Map<String, String> fields = new LinkedHashMap<>();
+            if (seasons == null || seasons.isEmpty()) {
+                if (!incompleteSeasons.isEmpty()) {
+                    return null;
+                }
+                for (int season : retainedSeasons) {
+                    putSeasonVertical(fields, skier, resortID, resort, String.valueOf(season), season);
+                }
+            } else {
+                for (String seasonID : seasons) {
+                    int season = parse(seasonID);
+                    if (!inRange(skier, resort, season, 0) || incompleteSeasons.contains(season)) {
+                        return null;
+                    }
+                    putSeasonVertical(fields, skier, resortID, resort, seasonID, season);
+                }
+            }
+            fields.put(RedisKeys.resortCompleteField(resortID), "1");
+            return fields;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putSeasonVertical(Map<String, String> fields, int skier, String resortID, int resort, String seasonID,
+                                   int season) {
+        int vertical = seasonVerticals.get(skierDayKey(skier, resort, season, 0), NO_VALUE);
+        if (vertical != NO_VALUE) {
+            fields.put(RedisKeys.resortSeasonField(resortID, seasonID), String.valueOf(vertical));
+        }
+    }
+
+    public int getSkierDays() {
+        lock.readLock().lock();
+        try {
+            return dayVerticals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the model to file (via a temporary file and an atomic rename) and returns the delivery tag of the
+     * last batch it holds, which the feed may then ack; -1 if nothing was applied since the previous snapshot.
+     */
+    public long snapshot(Path file, long previousTag) throws IOException {
+        // Readers go on; the writer waits, so the file and the tag match
+        lock.readLock().lock();
+        try {
+            if (lastDeliveryTag == previousTag) {
+                return -1;
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                writeInts(out, retainedSeasons);
+                writeInts(out, incompleteSeasons);
+                out.writeInt(unackedBatchIds.size());
+                for (String batchId : unackedBatchIds.keySet()) {
+                    out.writeUTF(batchId);
+                }
+                writeMap(out, dayVerticals);
+                writeMap(out, seasonVerticals);
+                out.writeInt(skiersByDay.size());
+                for (Map.Entry<Integer, BitSet> day : skiersByDay.entrySet()) {
+                    long[] words = day.getValue().toLongArray();
+                    out.writeInt(day.getKey());
+                    out.writeInt(words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return lastDeliveryTag;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The feed acked every batch up to deliveryTag: the broker will not redeliver them, so their IDs can go
+    public void acknowledged(long deliveryTag) {
+        lock.writeLock().lock();
+        try {
+            unackedBatchIds.values().removeIf(tag -> tag <= deliveryTag);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Loads a snapshot into this (still empty) model; false when there is none or it cannot be read
+    public boolean restore(Path file) {
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            readInts(in, retainedSeasons);
+            readInts(in, incompleteSeasons);
+            for (int n = in.readInt(); n > 0; n--) {
+                snapshotBatchIds.add(in.readUTF());
+            }
+            dayVerticals = readMap(in);
+            seasonVerticals = readMap(in);
+            for (int n = in.readInt(); n > 0; n--) {
+                int key = in.readInt();
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                skiersByDay.put(key, BitSet.valueOf(words));
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            System.err.println("Unreadable read model snapshot " + file + ", rebuilding: " + e.getMessage());
+            clear();
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Adds the season to the retained ones if it is complete, evicting the oldest beyond retainedSeasonCount
+    private boolean retain(int seasonID) {
+        if (retainedSeasons.contains(seasonID)) {
+            return true;
+        }
+        if (incompleteSeasons.contains(seasonID)) {
+            return false;
+        }
+        if (retainedSeasons.size() >= retainedSeasonCount) {
+            if (seasonID < retainedSeasons.first()) {
+                incompleteSeasons.add(seasonID);
+                return false;
+            }
+            evict(retainedSeasons.first());
+        }
+        retainedSeasons.add(seasonID);
+        return true;
+    }
+
+    private void evict(int seasonID) {
+        retainedSeasons.remove(seasonID);
+        incompleteSeasons.add(seasonID);
+        dayVerticals = withoutSeason(dayVerticals, seasonID);
+        seasonVerticals = withoutSeason(seasonVerticals, seasonID);
+        Iterator<Integer> days = skiersByDay.keySet().iterator();
+        while (days.hasNext()) {
+            if (((days.next() >>> 9) & 0x3FFF) == seasonID) {
+                days.remove();
+            }
+        }
+    }
+
+    private void clear() {
+        dayVerticals = new LongIntHashMap(EXPECTED_SKIER_DAYS);
+        seasonVerticals = new LongIntHashMap(EXPECTED_SKIER_DAYS);
+        skiersByDay.clear();
+        retainedSeasons.clear();
+        incompleteSeasons.clear();
+        snapshotBatchIds.clear();
+    }
+
+    private static LongIntHashMap withoutSeason(LongIntHashMap map, int seasonID) {
+        LongIntHashMap kept = new LongIntHashMap(map.size());
+        map.forEach((key, value) -> {
+            if (((key >>> 9) & 0x3FFF) != seasonID) {
+                kept.addTo(key, value);
+            }
+        });
+        return kept;
+    }
+
+    private static boolean inRange(int skierID, int resortID, int seasonID, int dayID) {
+        return skierID >= 0 && resortID >= 0 && resortID <= 0x1FF && seasonID >= 0 && seasonID <= 0x3FFF
+                && dayID >= 0 && dayID <= 0x1FF;
+    }
+
+    // -1 (out of range) when the ID is not a number
+    private static int parse(String id) {
+        try {
+            return id == null ? -1 : Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // skierID in the high 32 bits, then resortID (9 bits), seasonID (14 bits), dayID (9 bits)
+    private static long skierDayKey(int skierID, int resortID, int seasonID, int dayID) {
+        return ((long) skierID << 32) | (dayKey(resortID, seasonID, dayID) & 0xFFFFFFFFL);
+    }
+
+    private static int dayKey(int resortID, int seasonID, int dayID) {
+        return (resortID << 23) | (seasonID << 9) | dayID;
+    }
+
+    private static void writeInts(DataOutputStream out, Collection<Integer> values) throws IOException {
+        out.writeInt(values.size());
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void readInts(DataInputStream in, Collection<Integer> values) throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            values.add(in.readInt());
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, LongIntHashMap map) throws IOException {
+        out.writeInt(map.size());
+        IOException[] failure = new IOException[1];
+        map.forEach((key, value) -> {
+            if (failure[0] == null) {
+                try {
+                    out.writeLong(key);
+                    out.writeInt(value);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static LongIntHashMap readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        LongIntHashMap map = new LongIntHashMap(Math.max(size, EXPECTED_SKIER_DAYS));
+        for (int i = 0; i < size; i++) {
+            map.addTo(in.readLong(), in.readInt());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,135 @@
+import com.google.gson.Gson;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a ReadModel from the persisted-ride fanout of the POST consumer (see RideFanoutPublisher in SkierConsumer).
+ *
+ * Each instance binds its own durable queue, readModel.{instanceID}, and acks a batch only once a snapshot holding
+ * it is on disk. After a restart the snapshot plus the still unacked messages are the whole history, as long as
+ * the queue outlived the restart (it expires after queueExpiresMs without a consumer). Otherwise the model starts
+ * empty, and every season with rides persisted before the queue was bound (found from the POST consumer's skier
+ * bitmaps) is marked incomplete and left to the caches and DynamoDB.
+ */
+public class ReadModelFeed {
+    public static final String RIDE_FANOUT_EXCHANGE = "persistedRidesExchange"; // RideFanoutPublisher in SkierConsumer
+    private static final String QUEUE_PREFIX = "readModel.";
+    private static final int SCAN_COUNT = 1000;
+
+    private final ReadModel model;
+    private final String queue;
+    private final Path snapshotFile;
+    private final long queueExpiresMs;
+    private final Gson gson = new Gson();
+
+    private Channel channel;
+    private volatile long ackedTag;
+
+    public ReadModelFeed(ReadModel model, String instanceID, Path snapshotFile, long queueExpiresMs) {
+        this.model = model;
+        this.queue = QUEUE_PREFIX + instanceID;
+        this.snapshotFile = snapshotFile;
+        this.queueExpiresMs = queueExpiresMs;
+    }
+
+    public void start(Connection connection, JedisPool jedisPool, long snapshotIntervalMs) throws Exception {
+        boolean queueKept = queueExists(connection);
+        channel = connection.createChannel();
+        channel.exchangeDeclare(RIDE_FANOUT_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+        channel.queueDeclare(queue, true, false, false, Map.of("x-expires", queueExpiresMs));
+        channel.queueBind(queue, RIDE_FANOUT_EXCHANGE, "");
+
+        // Bound before the scan, so a ride the scan misses is in the queue
+        if (queueKept && model.restore(snapshotFile)) {
+            System.out.println("Read model restored from " + snapshotFile);
+        } else {
+            Set<Integer> seasons = seasonsWithRides(jedisPool);
+            model.markIncomplete(seasons);
+            System.out.println("Read model starting empty; seasons left to the other paths: " + seasons);
+        }
+
+        // No prefetch limit: everything since the last snapshot stays unacked
+        channel.basicConsume(queue, false, (consumerTag, delivery) -> {
+            int[][] rides = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), int[][].class);
+            model.apply(delivery.getProperties().getMessageId(), rides, delivery.getEnvelope().getDeliveryTag());
+        }, consumerTag -> System.err.println("Read model feed canceled, its answers go stale"));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "read-model-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshot, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void snapshot() {
+        try {
+            long tag = model.snapshot(snapshotFile, ackedTag);
+            if (tag > 0) {
+                channel.basicAck(tag, true);
+                ackedTag = tag;
+                model.acknowledged(tag);
+            }
+        } catch (Exception e) {
+            System.err.println("Read model snapshot failed, keeping its batches unacked: " + e.getMessage());
+        }
+    }
+
+    // A failed passive declare closes the channel, so it gets one of its own
+    private boolean queueExists(Connection connection) throws IOException {
+        Channel probe = connection.createChannel();
+        try {
+            probe.queueDeclarePassive(queue);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (probe.isOpen()) {
+                try {
+                    probe.close();
+                } catch (Exception ignored) {
+                    // closing a channel we no longer need
+                }
+            }
+        }
+    }
+
+    // Seasons of every agg:uniqueSkiers:RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID} bitmap
+    private static Set<Integer> seasonsWithRides(JedisPool jedisPool) {
+        Set<Integer> seasons = new HashSet<>();
+        try (Jedis jedis = jedisPool.getResource()) {
+            ScanParams params = new ScanParams().match(RedisKeys.UNIQUE_SKIERS_BITMAP_PREFIX + "*").count(SCAN_COUNT);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> page = jedis.scan(cursor, params);
+                cursor = page.getCursor();
+                for (String key : page.getResult()) {
+                    String[] parts = key.substring(RedisKeys.UNIQUE_SKIERS_BITMAP_PREFIX.length()).split("#");
+                    if (parts.length == 6) {
+                        try {
+                            seasons.add(Integer.parseInt(parts[3]));
+                        } catch (NumberFormatException e) {
+                            // not a season the read model could hold either
+                        }
+                    }
+                }
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+        return seasons;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Redis key layout shared by the POST consumer (writer) and the GET consumer (reader).
+ * Keep in sync with SkierConsumer/src/main/java/RedisKeys.java.
+ */
+public class RedisKeys {
+    // Hash per skier: field RESORT#{resortID}#SEASON#{seasonID}#DAY#{dayID} -> total vertical of that day
+    public static final String DAY_VERTICAL_AGGREGATE_PREFIX = "agg:dayVertical:";
+    // Hash per skier and resort: field {seasonID} -> total vertical of that season
+    public static final String SEASON_VERTICAL_AGGREGATE_PREFIX = "agg:seasonVertical:";
+    // Set per skier-day of already applied rides (rideID, or "{time}:{liftID}" for rides without one), used to make increments idempotent
+    public static final String APPLIED_RIDES_PREFIX = "agg:rides:";
+    // Number of the last delta chunk applied by one SkierDayAggregateStore, used to make its flushes idempotent
+    public static final String AGGREGATE_FLUSH_SEQUENCE_PREFIX = "agg:flushSeq:";
+    // Bitmap per resort-season-day: bit {skierID} is set when the skier rode that day
+    public static final String UNIQUE_SKIERS_BITMAP_PREFIX = "agg:uniqueSkiers:";
+    // Set per hour (taken from the time-sortable ride ID) of ride IDs already persisted, used for deduplication
+    public static final String PERSISTED_RIDE_IDS_PREFIX = "dedup:rides:";
+    // GET response cache: compact integer fields, formatted into JSON only by the GET consumer.
+    // Hash per skier-resort-season: field {dayID} -> total vertical of the day (-1 = no rides)
+    public static final String DAY_VERTICAL_CACHE_PREFIX = "dayVertical:";
+    // Hash per resort-season: field {dayID} -> number of unique skiers of the day
+    public static final String UNIQUE_SKIERS_CACHE_PREFIX = "uniqueSkiers:";
+    // Hash per skier: field {resortID}#{seasonID} -> total vertical of the season; field {resortID}#* is present
+    // when every season of the resort is, so any season subset is answered from the one hash
+    public static final String RESORT_VERTICAL_CACHE_PREFIX = "resortVertical:";
+    // Counter per cached field, bumped by the POST consumer whenever it deletes the field; a value loaded
+    // before the bump is not cached (see ResponseCache in SkierGetConsumer)
+    public static final String CACHE_VERSION_PREFIX = "cacheVersion:";
+
+    // Ride IDs carry milliseconds since this epoch in their top 41 bits (see RideIdGenerator in SkierServlet)
+    private static final long RIDE_ID_EPOCH_MS = 1704067200000L;
+    private static final int RIDE_ID_TIME_SHIFT = 22;
+
+    public static String skierPK(Object skierID) {
+        return "SKIER#" + skierID;
+    }
+
+    public static String dayField(Object resortID, Object seasonID, Object dayID) {
+        return "RESORT#" + resortID + "#SEASON#" + seasonID + "#DAY#" + dayID;
+    }
+
+    public static String dayVerticalAggregate(Object skierID) {
+        return DAY_VERTICAL_AGGREGATE_PREFIX + skierPK(skierID);
+    }
+
+    public static String seasonVerticalAggregate(Object skierID, Object resortID) {
+        return SEASON_VERTICAL_AGGREGATE_PREFIX + skierPK(skierID) + ":RESORT#" + resortID;
+    }
+
+    public static String uniqueSkiersBitmap(Object resortID, Object seasonID, Object dayID) {
+        return UNIQUE_SKIERS_BITMAP_PREFIX + dayField(resortID, seasonID, dayID);
+    }
+
+    public static String persistedRideIds(long rideID) {
+        long hour = ((rideID >>> RIDE_ID_TIME_SHIFT) + RIDE_ID_EPOCH_MS) / 3600_000L;
+        return PERSISTED_RIDE_IDS_PREFIX + hour;
+    }
+
+    public static String aggregateFlushSequence(Object storeID) {
+        return AGGREGATE_FLUSH_SEQUENCE_PREFIX + storeID;
+    }
+
+    public static String appliedRides(Object skierID, Object resortID, Object seasonID, Object dayID) {
+        return APPLIED_RIDES_PREFIX + skierPK(skierID) + ":" + dayField(resortID, seasonID, dayID);
+    }
+
+    public static String dayVerticalCache(Object skierID, Object resortID, Object seasonID) {
+        return DAY_VERTICAL_CACHE_PREFIX + skierPK(skierID) + ":RESORT#" + resortID + "#SEASON#" + seasonID;
+    }
+
+    public static String uniqueSkiersCache(Object resortID, Object seasonID) {
+        return UNIQUE_SKIERS_CACHE_PREFIX + "RESORT#" + resortID + "#SEASON#" + seasonID;
+    }
+
+    public static String resortVerticalCache(Object skierID) {
+        return RESORT_VERTICAL_CACHE_PREFIX + skierPK(skierID);
+    }
+
+    public static String resortSeasonField(Object resortID, Object seasonID) {
+        return resortID + "#" + seasonID;
+    }
+
+    public static String resortCompleteField(Object resortID) {
+        return resortID + "#*";
+    }
+
+    public static String cacheVersion(String key, String field) {
+        return CACHE_VERSION_PREFIX + key + "#" + field;
+    }
+}
@@ -0,0 +1,131 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes GET replies from dedicated channels, off the consumer channels and the batch workers.
+ *
+ * send() only appends to a lock-free queue. Each publisher thread owns one channel and drains the queue
+ * back to back. The connection is meant to use NIO: its I/O loop coalesces the frames of consecutive
+ * publishes in one write buffer, so a burst of replies goes out in a few socket writes instead of one
+ * flush per reply (the blocking client flushes after every command). Once a reply is published its
+ * onSent callback runs, which is where the request is acked on its delivery channel.
+ */
+public class ReplyPublisher {
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Replies without a correlation ID all carry the same (empty) properties
+    private static final AMQP.BasicProperties NO_CORRELATION = new AMQP.BasicProperties.Builder().build();
+
+    private final Connection connection;
+    private final Queue<Reply> queue = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> idlePublishers = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong latencyCount = new AtomicLong();
+
+    public ReplyPublisher(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void start(int threads) throws Exception {
+        for (int i = 0; i < threads; i++) {
+            Channel channel = connection.createChannel();
+            Thread publisher = new Thread(() -> run(channel), "reply-publisher-" + i);
+            publisher.setDaemon(true);
+            publisher.start();
+        }
+    }
+
+    public void send(String replyTo, String correlationId, byte[] body, Runnable onSent) {
+        queue.offer(new Reply(replyTo, correlationId, body, onSent));
+        Thread idle = idlePublishers.poll();
+        if (idle != null) {
+            LockSupport.unpark(idle);
+        }
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    // Mean time from send() to the publish of a reply since the previous call, in microseconds
+    public long getAverageLatencyMicros() {
+        long count = latencyCount.getAndSet(0);
+        long nanos = latencyNanos.getAndSet(0);
+        return count == 0 ? 0 : nanos / count / 1000;
+    }
+
+    private void run(Channel channel) {
+        Thread self = Thread.currentThread();
+        while (!self.isInterrupted()) {
+            Reply reply = queue.poll();
+            if (reply != null) {
+                channel = publish(channel, reply);
+            } else {
+                // Register as idle, re-check, then sleep until send() wakes us (or briefly, if a wake-up was missed)
+                idlePublishers.offer(self);
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(MAX_IDLE_NANOS);
+                }
+                idlePublishers.remove(self);
+            }
+        }
+    }
+
+    // Returns the channel to publish the next reply on: a new one if this one was closed by the failure
+    private Channel publish(Channel channel, Reply reply) {
+        try {
+            AMQP.BasicProperties properties = reply.correlationId == null ? NO_CORRELATION
+                    : new AMQP.BasicProperties.Builder().correlationId(reply.correlationId).build();
+            channel.basicPublish("", reply.replyTo, properties, reply.body);
+            published.increment();
+            latencyNanos.addAndGet(System.nanoTime() - reply.queuedNanos);
+            latencyCount.incrementAndGet();
+        } catch (Exception e) {
+            failed.increment();
+            System.err.println("Error sending response to dynamic reply queue: " + e.getMessage());
+            if (!channel.isOpen()) {
+                try {
+                    channel = connection.createChannel();
+                } catch (Exception reopen) {
+                    System.err.println("Failed to reopen reply channel: " + reopen.getMessage());
+                }
+            }
+        }
+        // The request is done either way: the client gives up on a lost reply after its own timeout
+        reply.onSent.run();
+        return channel;
+    }
+
+    private static class Reply {
+        final String replyTo;
+        final String correlationId;
+        final byte[] body;
+        final Runnable onSent;
+        final long queuedNanos = System.nanoTime();
+
+        Reply(String replyTo, String correlationId, byte[] body, Runnable onSent) {
+            this.replyTo = replyTo;
+            this.correlationId = correlationId;
+            this.body = body;
+            this.onSent = onSent;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis response cache of the GET consumer with stampede protection.
+ *
+ * Values are compact integer fields of Redis hashes (see RedisKeys), read with one HMGET (or HGETALL) and
+ * formatted into JSON by the handlers. A read is a hit when all of its required fields are present.
+ *
+ * On a miss only one load per key and field list runs at a time:
+ * - threads of this process share one in-flight load (single-flight);
+ * - across instances the loader holds a short Redis lock lease (SET NX PX). Other instances poll for its
+ *   result and only load themselves if the lease runs out first.
+ * Hot keys are recomputed in the background before they expire (XFetch): a hit triggers an early refresh
+ * with a probability that rises as the remaining TTL approaches the typical load time of that kind of key.
+ * Loads that were avoided because another thread or instance was already loading are counted as suppressed.
+ *
+ * The POST consumer bumps a version per field when it deletes it. The versions of the required fields are
+ * read together with the hash, and loaded fields are only stored if they are unchanged, so values computed
+ * from rides older than the invalidation are not cached.
+ */
+public class ResponseCache {
+    private static final String LOCK_PREFIX = "lock:";
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end";
+    // KEYS: hash, then the version keys; ARGV: TTL, version count n, the n expected versions, field, value, ...
+    private static final String STORE_SCRIPT =
+            "local n = tonumber(ARGV[2]) " +
+            "for i = 1, n do " +
+            "  if (redis.call('GET', KEYS[i + 1]) or '0') ~= ARGV[2 + i] then return 0 end " +
+            "end " +
+            "redis.call('HSET', KEYS[1], unpack(ARGV, 3 + n)) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1";
+    private static final String NO_VERSION = "0";
+    private static final long LEASE_POLL_MS = 20;
+    private static final double LOAD_TIME_SMOOTHING = 0.2;
+
+    private final JedisPool jedisPool;
+    private final int ttlSeconds;
+    private final long leaseMs;
+    private final double beta;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Map<String, CompletableFuture<Map<String, String>>> inFlight = new ConcurrentHashMap<>();
+    // Smoothed load time per kind of key ("dayVertical", "uniqueSkiers", ...), the XFetch delta
+    private final Map<String, Double> loadMillis = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder suppressedLoads = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+
+    public ResponseCache(JedisPool jedisPool, int ttlSeconds, long leaseMs, double beta, int refreshThreads) {
+        this.jedisPool = jedisPool;
+        this.ttlSeconds = ttlSeconds;
+        this.leaseMs = leaseMs;
+        this.beta = beta;
+        // Refreshes are optional work: when the queue is full they are dropped, the key just expires normally
+        this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Returns the cached fields of key (all of them when fields is null) if every required field is present,
+     * otherwise the fields the loader returns. The loader only returns fields it computed completely; they are
+     * stored unless a required field was invalidated since the read.
+     */
+    public Map<String, String> get(String key, List<String> fields, List<String> requiredFields,
+                                   Callable<Map<String, String>> loader) throws Exception {
+        Lookup lookup;
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            lookup = lookup(pipeline, key, fields, requiredFields);
+            pipeline.sync();
+        }
+        return resolve(lookup, requiredFields, loader);
+    }
+
+    /**
+     * Queues the read of a get() on a caller's pipeline, so many lookups share one round trip. Versions are
+     * read for versionFields, a superset of the required fields passed to resolve() once the pipeline synced.
+     */
+    public Lookup lookup(Pipeline pipeline, String key, List<String> fields, List<String> versionFields) {
+        return new Lookup(pipeline, key, fields, versionFields);
+    }
+
+    // The second half of get(): a hit (possibly refreshed early in the background) or a load
+    public Map<String, String> resolve(Lookup lookup, List<String> requiredFields, Callable<Map<String, String>> loader)
+            throws Exception {
+        Load load = new Load(lookup.key, lookup.fields, requiredFields, lookup.versionsOf(requiredFields), loader);
+        if (lookup.isHit(requiredFields)) {
+            hits.increment();
+            if (shouldRefreshEarly(lookup.key, lookup.remainingMs())) {
+                earlyRefreshes.increment();
+                refresher.execute(() -> {
+                    try {
+                        load(load);
+                    } catch (Exception e) {
+                        System.err.println("Early refresh of " + lookup.key + " failed: " + e.getMessage());
+                    }
+                });
+            }
+            return lookup.cached();
+        }
+        return load(load);
+    }
+
+    // Queues the store of fields loaded outside resolve(), e.g. by a batched DynamoDB read, and counts the load
+    public void storeLoaded(Pipeline pipeline, Lookup lookup, List<String> requiredFields, Map<String, String> fields) {
+        loads.increment();
+        store(pipeline, lookup.key, fields, ttlSeconds, requiredFields, lookup.versionsOf(requiredFields));
+    }
+
+    // Queues a store of fields that is skipped if the version of a version field is no longer the expected one
+    public static void store(Pipeline pipeline, String key, Map<String, String> fields, int ttlSeconds,
+                             List<String> versionFields, List<String> expectedVersions) {
+        List<String> keys = new ArrayList<>(1 + versionFields.size());
+        List<String> args = new ArrayList<>(2 + versionFields.size() + 2 * fields.size());
+        keys.add(key);
+        args.add(String.valueOf(ttlSeconds));
+        args.add(String.valueOf(versionFields.size()));
+        for (int i = 0; i < versionFields.size(); i++) {
+            keys.add(RedisKeys.cacheVersion(key, versionFields.get(i)));
+            args.add(expectedVersions.get(i));
+        }
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            args.add(field.getKey());
+            args.add(field.getValue());
+        }
+        pipeline.eval(STORE_SCRIPT, keys, args);
+    }
+
+    // Expected versions for fields that were never invalidated, e.g. when the cache warmer writes them
+    public static List<String> noVersions(int count) {
+        return Collections.nCopies(count, NO_VERSION);
+    }
+
+    // A complete answer is a 200 that is not flagged partial (gson writes "response_code":200); used by the near cache
+    public static boolean isComplete(String response) {
+        return response.contains("\"response_code\":200") && !response.contains("\"partial\"");
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getSuppressedLoads() {
+        return suppressedLoads.sum();
+    }
+
+    public long getEarlyRefreshes() {
+        return earlyRefreshes.sum();
+    }
+
+    // XFetch: refresh when -delta * beta * ln(rand) reaches the remaining TTL
+    private boolean shouldRefreshEarly(String key, long remainingMs) {
+        if (remainingMs < 0) {
+            return false; // no expiry
+        }
+        Double delta = loadMillis.get(kind(key));
+        if (delta == null) {
+            return false;
+        }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        return -delta * beta * Math.log(random) >= remainingMs;
+    }
+
+    // Single-flight within this process: concurrent callers for one key and field list wait for the first caller's load
+    private Map<String, String> load(Load load) throws Exception {
+        CompletableFuture<Map<String, String>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> running = inFlight.putIfAbsent(load.id, mine);
+        if (running != null) {
+            suppressedLoads.increment();
+            try {
+                return running.get(leaseMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                return load.loader.call(); // the other load failed or is stuck: answer this request ourselves
+            }
+        }
+
+        try {
+            Map<String, String> value = loadWithLease(load);
+            mine.complete(value);
+            return value;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(load.id, mine);
+        }
+    }
+
+    // Across instances: only the holder of the lock lease loads; the others wait for its result
+    private Map<String, String> loadWithLease(Load load) throws Exception {
+        String lockKey = LOCK_PREFIX + load.id;
+        boolean leased;
+        try (Jedis jedis = jedisPool.getResource()) {
+            leased = "OK".equals(jedis.set(lockKey, owner, SetParams.setParams().nx().px(leaseMs)));
+            if (!leased) {
+                long deadline = System.currentTimeMillis() + leaseMs;
+                while (System.currentTimeMillis() < deadline) {
+                    Thread.sleep(LEASE_POLL_MS);
+                    Map<String, String> cached = load.fields == null ? jedis.hgetAll(load.key)
+                            : toMap(load.fields, jedis.hmget(load.key, load.fields.toArray(new String[0])));
+                    if (cached.keySet().containsAll(load.requiredFields)) {
+                        suppressedLoads.increment();
+                        return cached;
+                    }
+                }
+                // The lease ran out without a result (loader died or the answer is not cacheable): load ourselves
+            }
+        }
+
+        try {
+            long start = System.nanoTime();
+            Map<String, String> value = load.loader.call();
+            loads.increment();
+            recordLoadTime(kind(load.key), (System.nanoTime() - start) / 1e6);
+            if (!value.isEmpty()) {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    Pipeline pipeline = jedis.pipelined();
+                    store(pipeline, load.key, value, ttlSeconds, load.requiredFields, load.versions);
+                    pipeline.sync();
+                }
+            }
+            return value;
+        } finally {
+            if (leased) {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.eval(RELEASE_SCRIPT, Collections.singletonList(lockKey), Collections.singletonList(owner));
+                }
+            }
+        }
+    }
+
+    private void recordLoadTime(String kind, double millis) {
+        loadMillis.merge(kind, millis, (previous, sample) -> previous + LOAD_TIME_SMOOTHING * (sample - previous));
+    }
+
+    // HGETALL already gives a map; HMGET gives the values in field order, null for missing fields
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> toMap(List<String> fields, Object read) {
+        if (fields == null) {
+            return (Map<String, String>) read;
+        }
+        List<String> values = (List<String>) read;
+        Map<String, String> cached = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (values.get(i) != null) {
+                cached.put(fields.get(i), values.get(i));
+            }
+        }
+        return cached;
+    }
+
+    // Cache keys are "{kind}:...", see RedisKeys
+    private static String kind(String key) {
+        int separator = key.indexOf(':');
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    /**
+     * Reads queued by lookup(); the accessors may only be used after the pipeline synced.
+     */
+    public static class Lookup {
+        private final String key;
+        private final List<String> fields;
+        private final Response<?> read;
+        private final Response<Long> pttl;
+        private final Map<String, Response<String>> versionReads = new HashMap<>();
+        private Map<String, String> cached;
+
+        private Lookup(Pipeline pipeline, String key, List<String> fields, List<String> versionFields) {
+            this.key = key;
+            this.fields = fields;
+            this.read = fields == null ? pipeline.hgetAll(key) : pipeline.hmget(key, fields.toArray(new String[0]));
+            this.pttl = pipeline.pttl(key);
+            for (String field : versionFields) {
+                versionReads.put(field, pipeline.get(RedisKeys.cacheVersion(key, field)));
+            }
+        }
+
+        public Map<String, String> cached() {
+            if (cached == null) {
+                cached = toMap(fields, read.get());
+            }
+            return cached;
+        }
+
+        public boolean isHit(List<String> requiredFields) {
+            return cached().keySet().containsAll(requiredFields);
+        }
+
+        private long remainingMs() {
+            return pttl.get();
+        }
+
+        private List<String> versionsOf(List<String> requiredFields) {
+            List<String> versions = new ArrayList<>(requiredFields.size());
+            for (String field : requiredFields) {
+                String version = versionReads.get(field).get();
+                versions.add(version == null ? NO_VERSION : version);
+            }
+            return versions;
+        }
+    }
+
+    private static class Load {
+        final String key;
+        final List<String> fields; // null = the whole hash
+        final List<String> requiredFields;
+        final List<String> versions; // of the required fields, read before the load
+        final Callable<Map<String, String>> loader;
+        final String id;
+
+        Load(String key, List<String> fields, List<String> requiredFields, List<String> versions,
+             Callable<Map<String, String>> loader) {
+            this.key = key;
+            this.fields = fields;
+            this.requiredFields = requiredFields;
+            this.versions = versions;
+            this.loader = loader;
+            this.id = key + "|" + (fields == null ? "*" : String.join(",", fields));
+        }
+    }
+}
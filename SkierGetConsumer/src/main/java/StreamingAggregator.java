@@ -0,0 +1,157 @@
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Folds SkierTable query results into primitive accumulators page by page.
+ *
+ * Every method follows LastEvaluatedKey through all pages (paginator / async publisher), so large resort-days are
+ * no longer cut off at the first 1 MB page, and each item is dropped as soon as it has been added to the running
+ * total. Callers pass requests with a projection expression limited to the attributes read here.
+ */
+public class StreamingAggregator {
+    private static final String SKIER_PK_PREFIX = "SKIER#";
+    private static final int MAX_DENSE_SKIER_ID = 1 << 20;
+
+    // Sum of the "vertical" attribute over all pages, or -1 when the query matched no item (projection: vertical)
+    public static long sumVerticals(DynamoDbClient client, QueryRequest request) {
+        long total = -1;
+        for (Map<String, AttributeValue> item : client.queryPaginator(request).items()) {
+            total = Math.max(total, 0) + vertical(item);
+        }
+        return total;
+    }
+
+    // Number of distinct skiers over all pages (projection: PK). IDs up to MAX_DENSE_SKIER_ID go into a bitset;
+    // larger ones into a set, so one stray huge ID does not allocate a bitset up to it.
+    public static int countDistinctSkiers(DynamoDbClient client, QueryRequest request) {
+        BitSet skiers = new BitSet();
+        Set<String> sparseSkiers = new HashSet<>();
+        for (Map<String, AttributeValue> item : client.queryPaginator(request).items()) {
+            AttributeValue pk = item.get("PK");
+            if (pk != null && pk.s() != null && pk.s().startsWith(SKIER_PK_PREFIX)) {
+                String skierID = pk.s().substring(SKIER_PK_PREFIX.length());
+                long id = skierID.length() <= 10 ? Long.parseLong(skierID) : Long.MAX_VALUE;
+                if (id <= MAX_DENSE_SKIER_ID) {
+                    skiers.set((int) id);
+                } else {
+                    sparseSkiers.add(skierID);
+                }
+            }
+        }
+        return skiers.cardinality() + sparseSkiers.size();
+    }
+
+    // Verticals per season over all pages, read from an async publisher (projection: SK, vertical)
+    public static CompletableFuture<SeasonTotals> sumVerticalsBySeason(DynamoDbAsyncClient client, QueryRequest request) {
+        SeasonTotals totals = new SeasonTotals();
+        return client.queryPaginator(request).items()
+                .subscribe(item -> totals.add(item.get("SK").s().split("#")[3], vertical(item))) // SK: RESORT#r#SEASON#s#...
+                .thenApply(done -> totals);
+    }
+
+    // Day verticals of a whole skier partition over all pages, read from an async publisher (projection: SK, vertical)
+    public static CompletableFuture<SkierTimeline> foldTimeline(DynamoDbAsyncClient client, QueryRequest request) {
+        SkierTimeline timeline = new SkierTimeline();
+        return client.queryPaginator(request).items()
+                .subscribe(item -> {
+                    String[] sk = item.get("SK").s().split("#"); // SK: RESORT#r#SEASON#s#DAY#d[#LIFT#l]
+                    timeline.add(sk[1], sk[3], sk[5], vertical(item));
+                })
+                .thenApply(done -> timeline);
+    }
+
+    private static long vertical(Map<String, AttributeValue> item) {
+        AttributeValue vertical = item.get("vertical");
+        return vertical == null ? 0 : Long.parseLong(vertical.n());
+    }
+
+    /**
+     * Running totals per seasonID. A skier has few seasons per resort, so parallel arrays with a linear
+     * lookup beat a map. Items of one publisher arrive sequentially, so no synchronization is needed.
+     */
+    public static class SeasonTotals {
+        private String[] seasons = new String[4];
+        private long[] totals = new long[4];
+        private int size;
+
+        public void add(String seasonID, long vertical) {
+            for (int i = 0; i < size; i++) {
+                if (seasons[i].equals(seasonID)) {
+                    totals[i] += vertical;
+                    return;
+                }
+            }
+            if (size == seasons.length) {
+                seasons = Arrays.copyOf(seasons, size * 2);
+                totals = Arrays.copyOf(totals, size * 2);
+            }
+            seasons[size] = seasonID;
+            totals[size++] = vertical;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String seasonAt(int index) {
+            return seasons[index];
+        }
+
+        public long totalAt(int index) {
+            return totals[index];
+        }
+    }
+
+    /**
+     * Every day vertical of one skier, by resort and season. Filled sequentially by one publisher and only
+     * read once its future completed.
+     */
+    public static class SkierTimeline {
+        // resortID -> seasonID -> dayID -> total vertical of the day
+        private final Map<String, Map<String, Map<String, Long>>> dayVerticals = new HashMap<>();
+
+        void add(String resortID, String seasonID, String dayID, long vertical) {
+            dayVerticals.computeIfAbsent(resortID, r -> new HashMap<>())
+                    .computeIfAbsent(seasonID, s -> new HashMap<>())
+                    .merge(dayID, vertical, Long::sum);
+        }
+
+        public Set<String> resorts() {
+            return dayVerticals.keySet();
+        }
+
+        // dayID -> vertical of one resort-season, empty when the skier has no rides there
+        public Map<String, Long> dayVerticals(String resortID, String seasonID) {
+            return dayVerticals.getOrDefault(resortID, Map.of()).getOrDefault(seasonID, Map.of());
+        }
+
+        // Total vertical of the day, -1 when it has no rides
+        public long dayVertical(String resortID, String seasonID, String dayID) {
+            return dayVerticals(resortID, seasonID).getOrDefault(dayID, -1L);
+        }
+
+        // seasonID -> total vertical of the season at the resort, in season order
+        public Map<String, Long> seasonVerticals(String resortID) {
+            Map<String, Long> seasons = new TreeMap<>();
+            for (Map.Entry<String, Map<String, Long>> season : dayVerticals.getOrDefault(resortID, Map.of()).entrySet()) {
+                long total = 0;
+                for (long vertical : season.getValue().values()) {
+                    total += vertical;
+                }
+                seasons.put(season.getKey(), total);
+            }
+            return seasons;
+        }
+    }
+}
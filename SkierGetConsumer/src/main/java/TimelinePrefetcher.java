@@ -0,0 +1,126 @@
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads a skier's whole timeline on the first API2 or API3 miss and caches everything derived from it.
+ *
+ * Both APIs read the same SKIER#{skierID} partition with different SK prefixes, so a skier page that asks for
+ * several days and resorts used to run one query each. Here the first miss reads the partition once (all pages,
+ * projected to SK and vertical) and writes every day vertical and every resort's season verticals to the response
+ * cache in one pipeline, so the follow-up requests are hits. Concurrent misses for the same skier, from any lane,
+ * share the one read.
+ *
+ * Prefetched fields are only written if the POST consumer never invalidated them (see ResponseCache.noVersions);
+ * the fields the request itself asked for are stored by ResponseCache with the versions read before the load.
+ */
+public class TimelinePrefetcher {
+    private final DynamoDbAsyncClient client;
+    private final JedisPool jedisPool;
+    private final String tableName;
+    private final int ttlSeconds;
+    private final Map<String, CompletableFuture<StreamingAggregator.SkierTimeline>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder sharedLoads = new LongAdder();
+    private final LongAdder prefetchedFields = new LongAdder();
+
+    public TimelinePrefetcher(DynamoDbAsyncClient client, JedisPool jedisPool, String tableName, int ttlSeconds) {
+        this.client = client;
+        this.jedisPool = jedisPool;
+        this.tableName = tableName;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    // The skier's timeline; completes once it was read, and cached as far as Redis allowed
+    public CompletableFuture<StreamingAggregator.SkierTimeline> load(String skierID) {
+        CompletableFuture<StreamingAggregator.SkierTimeline> mine = new CompletableFuture<>();
+        CompletableFuture<StreamingAggregator.SkierTimeline> running = inFlight.putIfAbsent(skierID, mine);
+        if (running != null) {
+            sharedLoads.increment();
+            return running;
+        }
+        loads.increment();
+
+        StreamingAggregator.foldTimeline(client, QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression("PK = :pk")
+                .projectionExpression("SK, vertical")
+                .expressionAttributeValues(Map.of(":pk", AttributeValue.builder().s(RedisKeys.skierPK(skierID)).build()))
+                .build()
+        ).whenComplete((timeline, error) -> {
+            inFlight.remove(skierID, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+                return;
+            }
+            mine.complete(timeline);
+            try {
+                cache(skierID, timeline);
+            } catch (Exception e) {
+                System.err.println("Failed to prefetch the timeline of skier " + skierID + ": " + e.getMessage());
+            }
+        });
+        return mine;
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getSharedLoads() {
+        return sharedLoads.sum();
+    }
+
+    public long getPrefetchedFields() {
+        return prefetchedFields.sum();
+    }
+
+    // API3 cache fields of the resorts: every season vertical plus the marker that all seasons are present
+    public static Map<String, String> seasonFields(StreamingAggregator.SkierTimeline timeline, List<String> resorts) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String resortID : resorts) {
+            for (Map.Entry<String, Long> season : timeline.seasonVerticals(resortID).entrySet()) {
+                fields.put(RedisKeys.resortSeasonField(resortID, season.getKey()), String.valueOf(season.getValue()));
+            }
+            fields.put(RedisKeys.resortCompleteField(resortID), "1");
+        }
+        return fields;
+    }
+
+    private void cache(String skierID, StreamingAggregator.SkierTimeline timeline) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String resortID : timeline.resorts()) {
+                // API2: each day on its own, so one invalidated day does not keep the others out
+                for (String seasonID : timeline.seasonVerticals(resortID).keySet()) {
+                    String key = RedisKeys.dayVerticalCache(skierID, resortID, seasonID);
+                    for (Map.Entry<String, Long> day : timeline.dayVerticals(resortID, seasonID).entrySet()) {
+                        ResponseCache.store(pipeline, key, Map.of(day.getKey(), String.valueOf(day.getValue())), ttlSeconds,
+                                List.of(day.getKey()), ResponseCache.noVersions(1));
+                        prefetchedFields.increment();
+                    }
+                }
+
+                // API3: a resort's seasons and its complete marker together, or not at all
+                Map<String, String> fields = seasonFields(timeline, List.of(resortID));
+                List<String> versionFields = new ArrayList<>(fields.keySet());
+                ResponseCache.store(pipeline, RedisKeys.resortVerticalCache(skierID), fields, ttlSeconds,
+                        versionFields, ResponseCache.noVersions(versionFields.size()));
+                prefetchedFields.add(fields.size());
+            }
+            pipeline.sync();
+        }
+    }
+}
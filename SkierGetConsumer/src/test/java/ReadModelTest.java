@@ -0,0 +1,108 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadModelTest {
+    private static final int[][] BATCH_A = {{1, 2, 2024, 1, 100}, {1, 2, 2024, 1, 50}, {3, 2, 2024, 1, 70}};
+    private static final int[][] BATCH_B = {{1, 2, 2024, 2, 30}};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void answersFromAppliedRides() {
+        ReadModel model = new ReadModel(2);
+        model.apply("a", BATCH_A, 1);
+        model.apply("b", BATCH_B, 2);
+
+        assertEquals(Integer.valueOf(150), model.dayVertical("1", "2", "2024", "1"));
+        assertEquals(Integer.valueOf(-1), model.dayVertical("3", "2", "2024", "2"));
+        assertEquals(Integer.valueOf(2), model.uniqueSkiers("2", "2024", "1"));
+        assertEquals(Integer.valueOf(0), model.uniqueSkiers("2", "2024", "3"));
+        Map<String, String> fields = model.seasonVerticalFields("1", "2", List.of("2024"));
+        assertEquals("180", fields.get(RedisKeys.resortSeasonField("2", "2024")));
+        assertEquals("1", fields.get(RedisKeys.resortCompleteField("2")));
+    }
+
+    @Test
+    public void duplicateBatchIsAppliedOnce() {
+        ReadModel model = new ReadModel(2);
+        model.apply("a", BATCH_A, 1);
+        model.apply("a", BATCH_A, 2);
+
+        assertEquals(Integer.valueOf(150), model.dayVertical("1", "2", "2024", "1"));
+    }
+
+    @Test
+    public void incompleteSeasonIsNotAnswered() {
+        ReadModel model = new ReadModel(2);
+        model.apply("a", BATCH_A, 1);
+        model.markIncomplete(List.of(2024));
+
+        assertNull(model.dayVertical("1", "2", "2024", "1"));
+        assertNull(model.uniqueSkiers("2", "2024", "1"));
+        assertNull(model.seasonVerticalFields("1", "2", List.of()));
+    }
+
+    @Test
+    public void restoresSnapshotAndSkipsRedeliveredBatches() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("readmodel.snapshot");
+        ReadModel model = new ReadModel(2);
+        model.apply("a", BATCH_A, 1);
+        model.apply("b", BATCH_B, 2);
+        assertEquals(2, model.snapshot(file, 0));
+        assertEquals(-1, model.snapshot(file, 2));
+
+        // Not acked before the restart, so the broker redelivers both batches
+        ReadModel restored = new ReadModel(2);
+        assertTrue(restored.restore(file));
+        restored.apply("a", BATCH_A, 1);
+        restored.apply("b", BATCH_B, 2);
+        restored.apply("c", BATCH_B, 3);
+
+        assertEquals(Integer.valueOf(150), restored.dayVertical("1", "2", "2024", "1"));
+        assertEquals(Integer.valueOf(60), restored.dayVertical("1", "2", "2024", "2"));
+        assertEquals(Integer.valueOf(2), restored.uniqueSkiers("2", "2024", "1"));
+        assertEquals(3, restored.getSkierDays());
+    }
+
+    @Test
+    public void batchIdsOutliveSnapshotsUntilAcknowledged() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("readmodel.snapshot");
+        ReadModel model = new ReadModel(2);
+        model.apply("a", BATCH_A, 1);
+        model.snapshot(file, 0);
+        model.apply("b", BATCH_B, 2);
+        // The first ack was lost, so the second snapshot must still carry batch a
+        model.snapshot(file, 1);
+
+        ReadModel restored = new ReadModel(2);
+        assertTrue(restored.restore(file));
+        restored.apply("a", BATCH_A, 1);
+        assertEquals(Integer.valueOf(150), restored.dayVertical("1", "2", "2024", "1"));
+
+        // Once acked, the IDs are dropped from later snapshots
+        model.acknowledged(2);
+        model.apply("c", BATCH_B, 3);
+        model.snapshot(file, 2);
+        ReadModel afterAck = new ReadModel(2);
+        assertTrue(afterAck.restore(file));
+        afterAck.apply("a", BATCH_A, 4);
+        assertEquals(Integer.valueOf(300), afterAck.dayVertical("1", "2", "2024", "1"));
+    }
+
+    @Test
+    public void missingSnapshotIsNotRestored() {
+        assertFalse(new ReadModel(2).restore(folder.getRoot().toPath().resolve("missing")));
+    }
+}
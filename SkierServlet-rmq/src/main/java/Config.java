@@ -27,4 +27,24 @@ public class Config {
     public static String getRMQPassword() {
         return properties.getProperty("rabbitmq.password");
     }
-}
\ No newline at end of file
+
+    public static boolean isPartitioningEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("partitioning.enabled", "false"));
+    }
+
+    public static boolean isGetLanesEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("get.lanes.enabled", "false"));
+    }
+
+    public static boolean isGetAffinityEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("get.affinity.enabled", "false"));
+    }
+
+    public static int getMaxSkierID() {
+        return Integer.parseInt(properties.getProperty("skier.max.id", "100000"));
+    }
+
+    public static int getRideIdNode() {
+        return Integer.parseInt(properties.getProperty("rideid.node", "-1"));
+    }
+}
@@ -11,6 +11,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -21,12 +22,16 @@ public class ResortServlet extends HttpServlet {
 
     // RabbitMQ constants
     private static final String GET_QUEUE_NAME = "skiersGetQueue";
+    private static final String GET_HASH_EXCHANGE_NAME = "skiersGetHashExchange";
+    private static final String UNIQUE_SKIERS_LANE = "uniqueSkiers";
     private static final String GET_NUM_UNIQUE_SKIERS_MESSAGE_KEY = "GET_NUM_UNIQUE_SKIERS";
 
     // Connections
     private final Gson gson = new Gson();
     private Connection connection;
     private RMQChannelPool channelPool;
+    private final boolean getLanesEnabled = Config.isGetLanesEnabled();
+    private final boolean getAffinityEnabled = Config.isGetAffinityEnabled();
 
     @Override
     public void init() {
@@ -40,6 +45,23 @@ public class ResortServlet extends HttpServlet {
 
             connection = factory.newConnection();
             channelPool = new RMQChannelPool(CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
+
+            // GETs go to one lane queue per type (see LiftRideGetConsumer) or, with affinity, are hashed onto the
+            // GET consumer instances' own queues, which they bind to the hash exchanges themselves
+            if (getAffinityEnabled || getLanesEnabled) {
+                Channel channel = channelPool.borrowObject();
+                try {
+                    for (String lane : List.of(UNIQUE_SKIERS_LANE)) {
+                        if (getAffinityEnabled) {
+                            channel.exchangeDeclare(getExchange(lane), "x-consistent-hash", true);
+                        } else {
+                            channel.queueDeclare(getRoutingKey(lane, null), true, false, false, null);
+                        }
+                    }
+                } finally {
+                    channelPool.returnObject(channel);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -84,7 +106,9 @@ public class ResortServlet extends HttpServlet {
                         "dayID", dayID
                 ));
 
-                String response = sendGetRequestToQueue(requestPayload);
+                // With affinity all GETs of a resort-day go to the same GET consumer instance
+                String response = sendGetRequestToQueue(getExchange(UNIQUE_SKIERS_LANE),
+                        getRoutingKey(UNIQUE_SKIERS_LANE, resortID + "#" + seasonID + "#" + dayID), requestPayload);
 
                 if (response == null) {
                     // Timeout occurred
@@ -117,7 +141,23 @@ public class ResortServlet extends HttpServlet {
         }
     }
 
-    private String sendGetRequestToQueue(String message) throws Exception {
+    // Exchange of a lane's GETs: the default exchange, or with affinity the lane's consistent-hash exchange
+    private String getExchange(String lane) {
+        if (!getAffinityEnabled) {
+            return "";
+        }
+        return getLanesEnabled ? GET_HASH_EXCHANGE_NAME + "." + lane : GET_HASH_EXCHANGE_NAME;
+    }
+
+    // Routing key of a GET: its (lane) queue, or with affinity the key hashed onto the GET consumer instances
+    private String getRoutingKey(String lane, String affinityKey) {
+        if (getAffinityEnabled) {
+            return affinityKey;
+        }
+        return getLanesEnabled ? GET_QUEUE_NAME + "." + lane : GET_QUEUE_NAME;
+    }
+
+    private String sendGetRequestToQueue(String exchange, String routingKey, String message) throws Exception {
         Channel channel = null;
         final long TIMEOUT_MS = 15000; // Timeout duration in milliseconds
         final String correlationId = java.util.UUID.randomUUID().toString();
@@ -135,7 +175,7 @@ public class ResortServlet extends HttpServlet {
                     .build();
 
             // Publish request to the request queue
-            channel.basicPublish("", GET_QUEUE_NAME, props, message.getBytes(StandardCharsets.UTF_8));
+            channel.basicPublish(exchange, routingKey, props, message.getBytes(StandardCharsets.UTF_8));
             System.out.println("Published request with correlationId: " + correlationId);
 
             final String[] responseHolder = new String[1];
@@ -0,0 +1,52 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates 64-bit, time-sortable ride IDs: 41 bits of milliseconds since 2024-01-01 UTC, 10 bits of node
+ * ID and 12 bits of per-millisecond sequence (4096 IDs per ms per node).
+ */
+public class RideIdGenerator {
+    private static final long EPOCH_MS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier clock;
+    private long lastMs = -1;
+    private long sequence;
+
+    // A negative node picks a random one, which is unique enough for a handful of servlet instances
+    public RideIdGenerator(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    RideIdGenerator(int node, LongSupplier clock) {
+        int nodeId = node >= 0 ? node : ThreadLocalRandom.current().nextInt(1 << NODE_BITS);
+        this.node = nodeId & ((1L << NODE_BITS) - 1);
+        this.clock = clock;
+    }
+
+    public synchronized long nextId() {
+        // Never go back in time, even if the wall clock does
+        long now = Math.max(clock.getAsLong() - EPOCH_MS, lastMs);
+        if (now == lastMs) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                // Sequence exhausted for this millisecond: take the next one, parking until the wall clock gets
+                // there. After a clock regression it is further behind, and callers are not blocked that long.
+                now = lastMs + 1;
+                long wallMs = clock.getAsLong() - EPOCH_MS;
+                if (wallMs == lastMs) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMs = now;
+        return (now << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -23,7 +23,11 @@ public class SkierServlet extends HttpServlet {
 
     // RabbitMQ constants
     private static final String POST_QUEUE_NAME = "skiersQueue";
+    private static final String POST_HASH_EXCHANGE_NAME = "skiersHashExchange";
     private static final String GET_QUEUE_NAME = "skiersGetQueue";
+    private static final String GET_HASH_EXCHANGE_NAME = "skiersGetHashExchange";
+    private static final String DAY_VERTICAL_LANE = "dayVertical";
+    private static final String RESORT_VERTICAL_LANE = "resortVertical";
     private static final String GET_TOTAL_DAY_VERTICAL_MESSAGE_KEY = "GET_DAY_VERTICAL";
     private static final String GET_TOTAL_RESORT_VERTICAL_MESSAGE_KEY = "GET_RESORT_VERTICAL";
 
@@ -31,6 +35,11 @@ public class SkierServlet extends HttpServlet {
     private final Gson gson = new Gson();
     private Connection connection;
     private RMQChannelPool channelPool;
+    private final boolean partitioningEnabled = Config.isPartitioningEnabled();
+    private final boolean getLanesEnabled = Config.isGetLanesEnabled();
+    private final boolean getAffinityEnabled = Config.isGetAffinityEnabled();
+    private final RideIdGenerator rideIdGenerator = new RideIdGenerator(Config.getRideIdNode());
+    private final int maxSkierID = Config.getMaxSkierID();
 
     @Override
     public void init() {
@@ -46,6 +55,33 @@ public class SkierServlet extends HttpServlet {
 
             // Initialize RMQChannelPool with default pool settings
             channelPool = new RMQChannelPool(CHANNEL_POOL_SIZE, new RMQChannelFactory(connection));
+
+            // Rides are routed by skierID to the partition queues declared by SkierConsumer
+            if (partitioningEnabled) {
+                Channel channel = channelPool.borrowObject();
+                try {
+                    channel.exchangeDeclare(POST_HASH_EXCHANGE_NAME, "x-consistent-hash", true);
+                } finally {
+                    channelPool.returnObject(channel);
+                }
+            }
+
+            // GETs go to one lane queue per type (see LiftRideGetConsumer) or, with affinity, are hashed onto the
+            // GET consumer instances' own queues, which they bind to the hash exchanges themselves
+            if (getAffinityEnabled || getLanesEnabled) {
+                Channel channel = channelPool.borrowObject();
+                try {
+                    for (String lane : List.of(DAY_VERTICAL_LANE, RESORT_VERTICAL_LANE)) {
+                        if (getAffinityEnabled) {
+                            channel.exchangeDeclare(getExchange(lane), "x-consistent-hash", true);
+                        } else {
+                            channel.queueDeclare(getRoutingKey(lane, null), true, false, false, null);
+                        }
+                    }
+                } finally {
+                    channelPool.returnObject(channel);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -99,7 +135,9 @@ public class SkierServlet extends HttpServlet {
                         "skierID", skierID
                 ));
 
-                String response = sendGetRequestToQueue(requestPayload);
+                // With affinity all GETs of a skier go to the same GET consumer instance and its in-process caches
+                String response = sendGetRequestToQueue(getExchange(DAY_VERTICAL_LANE),
+                        getRoutingKey(DAY_VERTICAL_LANE, skierID), requestPayload);
                 Map<String, Object> responseMap = gson.fromJson(response, Map.class);
 
                 int responseCode = ((Double) responseMap.getOrDefault("response_code", 500)).intValue();
@@ -139,7 +177,8 @@ public class SkierServlet extends HttpServlet {
                         "seasons", seasons != null ? List.of(seasons) : List.of()
                 ));
 
-                String response = sendGetRequestToQueue(requestPayload);
+                String response = sendGetRequestToQueue(getExchange(RESORT_VERTICAL_LANE),
+                        getRoutingKey(RESORT_VERTICAL_LANE, skierID), requestPayload);
                 Map<String, Object> responseMap = gson.fromJson(response, Map.class);
 
                 int responseCode = ((Double) responseMap.getOrDefault("response_code", 500)).intValue();
@@ -166,7 +205,23 @@ public class SkierServlet extends HttpServlet {
         }
     }
 
-    private String sendGetRequestToQueue(String message) throws Exception {
+    // Exchange of a lane's GETs: the default exchange, or with affinity the lane's consistent-hash exchange
+    private String getExchange(String lane) {
+        if (!getAffinityEnabled) {
+            return "";
+        }
+        return getLanesEnabled ? GET_HASH_EXCHANGE_NAME + "." + lane : GET_HASH_EXCHANGE_NAME;
+    }
+
+    // Routing key of a GET: its (lane) queue, or with affinity the key hashed onto the GET consumer instances
+    private String getRoutingKey(String lane, String affinityKey) {
+        if (getAffinityEnabled) {
+            return affinityKey;
+        }
+        return getLanesEnabled ? GET_QUEUE_NAME + "." + lane : GET_QUEUE_NAME;
+    }
+
+    private String sendGetRequestToQueue(String exchange, String routingKey, String message) throws Exception {
         Channel channel = null;
         final long TIMEOUT_MS = 10000; // Timeout duration in milliseconds
         final String correlationId = java.util.UUID.randomUUID().toString();
@@ -184,7 +239,7 @@ public class SkierServlet extends HttpServlet {
                     .build();
 
             // Publish request to the request queue
-            channel.basicPublish("", GET_QUEUE_NAME, props, message.getBytes(StandardCharsets.UTF_8));
+            channel.basicPublish(exchange, routingKey, props, message.getBytes(StandardCharsets.UTF_8));
             System.out.println("Published request with correlationId: " + correlationId);
 
             final String[] responseHolder = new String[1];
@@ -253,7 +308,8 @@ public class SkierServlet extends HttpServlet {
         // If everything is valid
         try {
             LiftRide liftRide = new LiftRide(urlParts, jsonBody);
-            sendToQueue(gson.toJson(liftRide));
+            liftRide.setRideID(rideIdGenerator.nextId()); // lets consumers recognise redelivered rides
+            sendToQueue(gson.toJson(liftRide), urlParts[7]);
             resp.setStatus(HttpServletResponse.SC_CREATED);
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -288,6 +344,7 @@ public class SkierServlet extends HttpServlet {
         // Validate that resortID and skierID are integers
         if (!resortID.matches("\\d+")) return false;           // Resort ID must be numeric (integer)
         if (!skierID.matches("\\d+")) return false;            // Skier ID must be numeric (integer)
+        if (skierID.length() > 10 || Long.parseLong(skierID) > maxSkierID) return false; // bounds the skier bitmaps
 
         // Validate the static path strings
         if (!seasonPath.equals("seasons")) return false;       // Expected "seasons" path
@@ -330,13 +387,18 @@ public class SkierServlet extends HttpServlet {
         return true;
     }
 
-    private void sendToQueue(String message) {
+    private void sendToQueue(String message, String skierID) {
         try {
             // Borrow a channel from the pool
             Channel channel = channelPool.borrowObject();
             try {
 //                channel.queueDeclare(POST_QUEUE_NAME, true, false, false, null);
-                channel.basicPublish("", POST_QUEUE_NAME, null, message.getBytes(StandardCharsets.UTF_8));
+                if (partitioningEnabled) {
+                    // The consistent-hash exchange hashes the routing key, so all rides of a skier land on one partition
+                    channel.basicPublish(POST_HASH_EXCHANGE_NAME, skierID, null, message.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    channel.basicPublish("", POST_QUEUE_NAME, null, message.getBytes(StandardCharsets.UTF_8));
+                }
             } finally {
                 channelPool.returnObject(channel); // Return channel to the pool
             }
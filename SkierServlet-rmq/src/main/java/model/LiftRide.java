@@ -1,6 +1,7 @@
 package model;
 
 public class LiftRide {
+    private Long rideID;
     private Integer skierID;
     private Integer resortID;
     private Integer seasonID;
@@ -26,5 +27,9 @@ public class LiftRide {
         this.time = Integer.parseInt(jsonBody.split("\"time\"")[1].split(":")[1].trim().split(",")[0]);
         this.liftID = Integer.parseInt(jsonBody.split("\"liftID\"")[1].split(":")[1].trim().split("}")[0]);
     }
+
+    public void setRideID(Long rideID) {
+        this.rideID = rideID;
+    }
 }
 
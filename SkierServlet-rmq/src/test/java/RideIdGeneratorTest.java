@@ -0,0 +1,44 @@
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+
+public class RideIdGeneratorTest {
+    private static final long NOW_MS = 1735689600000L; // 2025-01-01T00:00:00Z
+
+    @Test
+    public void idsIncreaseWithinOneMillisecond() {
+        RideIdGenerator generator = new RideIdGenerator(1, () -> NOW_MS);
+        long previous = generator.nextId();
+        for (int i = 0; i < 1000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void idsStayUniqueAndIncreasingAcrossAClockRegression() {
+        AtomicLong clock = new AtomicLong(NOW_MS);
+        RideIdGenerator generator = new RideIdGenerator(1, clock::get);
+        Set<Long> ids = new HashSet<>();
+        long previous = generator.nextId();
+        ids.add(previous);
+
+        // The clock goes back a minute; more IDs than one millisecond's sequence holds must neither repeat nor block
+        clock.set(NOW_MS - 60000);
+        for (int i = 0; i < 20000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertTrue(ids.add(id));
+            previous = id;
+        }
+
+        // Once the clock is back, IDs carry on from where the regression left them
+        clock.set(NOW_MS + 1);
+        assertTrue(generator.nextId() > previous);
+    }
+}